@@ -0,0 +1,86 @@
+package Benchmarks;
+
+import Search.ABPruning;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the alpha beta search with LegacyABPruning, the version before it was reworked. Each operation decides
+ * one board of the corpus from an empty cache, like SearchBenchmark:
+ *
+ * java -jar benchmarks.jar ABPruningBenchmark
+ *
+ * main prints the nodes each version visits per decision instead:
+ *
+ * java -cp benchmarks.jar Benchmarks.ABPruningBenchmark
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ABPruningBenchmark {
+
+    @Param( { "mid", "late" } )
+    public String phase;
+
+    @Param( { "2", "4", "6" } )
+    public int depth;
+
+    private long[] boards;
+    private int next;
+    private ABPruning current;
+    private LegacyABPruning legacy;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        boards = Positions.get( phase );
+        current = new ABPruning();
+        current.setDepth( depth );
+        legacy = new LegacyABPruning();
+        legacy.setDepth( depth );
+    }
+
+    @Setup( Level.Invocation )
+    public void clearCache() {
+        current.clearCache();
+        next = ( next + 1 ) % boards.length;
+    }
+
+    @Benchmark
+    public long current() {
+        return current.decideAction( boards[next] );
+    }
+
+    @Benchmark
+    public long legacy() {
+        return legacy.decideAction( boards[next] );
+    }
+
+    /**
+     * Prints the mean nodes per decision of both versions over every board of the corpus, from an empty cache
+     */
+    public static void main( String[] args ) {
+        System.out.println( "phase,depth,legacy_nodes,current_nodes,ratio" );
+        for( String phase : new String[]{ "mid", "late" } ) {
+            long[] boards = Positions.get( phase );
+            for( int depth = 2; depth <= 8; depth += 2 ) {
+                ABPruning current = new ABPruning();
+                current.setDepth( depth );
+                LegacyABPruning legacy = new LegacyABPruning();
+                legacy.setDepth( depth );
+                for( long board : boards ) {
+                    current.clearCache();
+                    current.decideAction( board );
+                    legacy.decideAction( board );
+                }
+                System.out.println( String.format( Locale.ROOT, "%s,%d,%.0f,%.0f,%.1f", phase, depth,
+                        (double)legacy.nodes / boards.length, (double)current.getNodes() / boards.length,
+                        (double)legacy.nodes / current.getNodes() ) );
+            }
+        }
+    }
+}
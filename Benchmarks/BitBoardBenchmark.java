@@ -0,0 +1,108 @@
+package Benchmarks;
+
+import Environment.BitBoard;
+import Search.Evaluator;
+import Search.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the per-node primitives. Each operation runs over every board in the corpus,
+ * so divide the score by Positions.all().length for the cost of a single call.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BitBoardBenchmark {
+
+    private long[] boards;
+    private long[] moves;
+
+    @Setup
+    public void setup() {
+        boards = Positions.all();
+        moves = new long[4];
+    }
+
+    @Benchmark
+    public void moveLeft( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.moveLeft( board ) );
+        }
+    }
+
+    @Benchmark
+    public void moveRight( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.moveRight( board ) );
+        }
+    }
+
+    @Benchmark
+    public void moveUp( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.moveUp( board ) );
+        }
+    }
+
+    @Benchmark
+    public void moveDown( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.moveDown( board ) );
+        }
+    }
+
+    @Benchmark
+    public void rotateClockwise( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.rotateClockwise( board ) );
+        }
+    }
+
+    @Benchmark
+    public void isTerminal( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.isTerminal( board ) );
+        }
+    }
+
+    @Benchmark
+    public void emptySpaces( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( BitBoard.emptySpaces( board ) );
+        }
+    }
+
+    @Benchmark
+    public void evaluateBoard( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( Evaluator.evaluateBoard( board ) );
+        }
+    }
+
+    @Benchmark
+    public void evaluateCompact( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( Evaluator.evaluateCompact( board ) );
+        }
+    }
+
+    @Benchmark
+    public void generateMovesList( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( MoveGenerator.generateMoves( board ) );
+        }
+    }
+
+    @Benchmark
+    public void generateMovesArray( Blackhole bh ) {
+        for( long board : boards ) {
+            bh.consume( MoveGenerator.generateMoves( board, moves ) );
+        }
+    }
+}
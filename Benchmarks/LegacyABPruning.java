@@ -0,0 +1,100 @@
+package Benchmarks;
+
+import Environment.BitBoard;
+import Search.Evaluator;
+import Search.MoveGenerator;
+
+/**
+ * The alpha beta search as it was before iterative deepening, move ordering and the transposition table were added,
+ * kept so ABPruningBenchmark can compare node counts. Only a node counter was added and the debug output removed.
+ *
+ * Its min nodes try every tile placement and then every player move as well, and only update beta in the second loop.
+ */
+public class LegacyABPruning {
+
+    private int MAX_DEPTH = 8;
+    private long TILE_TWO = 0x1L;
+
+    private long[][] moveBuffers = new long[MAX_DEPTH + 1][4];
+
+    public long nodes = 0;
+
+    public long decideAction(long board){
+        long result = 0;
+        double maxValue = -1.0D / 0.0;
+
+        long[] actions = new long[4];
+        int count = MoveGenerator.generateMoves(board, actions);
+
+        for(int i = 0; i < count; i++){
+            long action = actions[i];
+            double resultValue = this.minValue(action, -1.0D / 0.0, 1.0D / 0.0, 0);
+            if(resultValue > maxValue){
+                result = action;
+                maxValue = resultValue;
+            }
+        }
+        return result;
+    }
+
+    public double maxValue(long boardState, double alpha, double beta, int depth){
+        nodes++;
+        if(BitBoard.isTerminal(boardState)){
+            return 0.0;
+        }
+        if(depth == MAX_DEPTH){
+            return Evaluator.evaluateBoard(boardState);
+        }
+
+        double value = -1.0D / 0.0;
+
+        long[] actions = moveBuffers[depth];
+        int count = MoveGenerator.generateMoves(boardState, actions);
+        for(int i = 0; i < count; i++){
+            long action = actions[i];
+            alpha = Math.max(alpha, value);
+            value = Math.max(value, this.minValue(action, alpha, beta, depth + 1));
+            if(value >= beta){
+                return value;
+            }
+        }
+        return value;
+    }
+
+    public double minValue(long boardState, double alpha, double beta, int depth){
+        nodes++;
+        if(BitBoard.isTerminal(boardState)){
+            return 0.0;
+        }
+        double value = 1.0D / 0.0;
+
+        if(depth == MAX_DEPTH){
+            return Evaluator.evaluateBoard(boardState);
+        }
+        for( long empty = BitBoard.emptyMask(boardState); empty != 0; empty &= empty - 1 ) {
+            int shift = Long.numberOfTrailingZeros(empty);
+            value = Math.min(value, maxValue( (boardState | (   TILE_TWO        << shift ) ), alpha, beta, depth + 1) );
+            value = Math.min(value, maxValue( (boardState | ( ( TILE_TWO << 1 ) << shift ) ), alpha, beta, depth + 1) );
+            if(value <= alpha){
+                return value;
+            }
+        }
+
+        long[] actions = moveBuffers[depth];
+        int count = MoveGenerator.generateMoves(boardState, actions);
+        for(int i = 0; i < count; i++){
+            long action = actions[i];
+            beta = Math.min(beta, value);
+            value = Math.min(value, this.maxValue(action, alpha, beta, depth + 1));
+            if(value <= alpha){
+                return value;
+            }
+        }
+        return value;
+    }
+
+    public void setDepth(int depth) {
+        this.MAX_DEPTH = depth;
+        this.moveBuffers = new long[depth + 1][4];
+    }
+}
@@ -0,0 +1,51 @@
+package Benchmarks;
+
+/**
+ * Fixed corpus of boards used by the benchmarks, sampled from a seeded depth 4 ExpectiMax game.
+ * Keeping them constant means results are comparable between runs and commits.
+ */
+public class Positions {
+
+    /**
+     * Largest tile 256 - 512, 1 to 6 empty squares
+     */
+    public static final long[] MID_GAME = {
+            0x0001101200351348L,
+            0x0013002412463358L,
+            0x2215112620170028L,
+            0x1015012603472268L,
+            0x0151123623773418L,
+            0x0223153402723239L,
+            0x7132135601321459L,
+            0x0003101672425279L
+    };
+
+    /**
+     * Largest tile 1024, 0 to 8 empty squares
+     */
+    public static final long[] LATE_GAME = {
+            0x000400050106222AL,
+            0x003310340157012AL,
+            0x000301062137226AL,
+            0x001300250338145AL,
+            0x001201352458346AL,
+            0x000100121458467AL,
+            0x101222342468567AL,
+            0x413125462468167AL
+    };
+
+    public static long[] get( String phase ) {
+        switch( phase ) {
+            case "mid":  return MID_GAME;
+            case "late": return LATE_GAME;
+            default: throw new IllegalArgumentException( "Unknown game phase: " + phase );
+        }
+    }
+
+    public static long[] all() {
+        long[] boards = new long[MID_GAME.length + LATE_GAME.length];
+        System.arraycopy( MID_GAME, 0, boards, 0, MID_GAME.length );
+        System.arraycopy( LATE_GAME, 0, boards, MID_GAME.length, LATE_GAME.length );
+        return boards;
+    }
+}
@@ -0,0 +1,57 @@
+package Benchmarks;
+
+import Search.ABPruning;
+import Search.ExpectiMax;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a full decision. Each operation decides one board of the corpus,
+ * cycling through the boards of the chosen game phase, starting from an empty cache.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class SearchBenchmark {
+
+    @Param( { "mid", "late" } )
+    public String phase;
+
+    @Param( { "2", "4", "6", "8" } )
+    public int depth;
+
+    private long[] boards;
+    private int next;
+    private ExpectiMax expectiMax;
+    private ABPruning abPruning;
+
+    @Setup( Level.Trial )
+    public void setup() {
+        boards = Positions.get( phase );
+        expectiMax = new ExpectiMax();
+        expectiMax.setDepth( depth );
+        abPruning = new ABPruning();
+        abPruning.setDepth( depth );
+    }
+
+    @Setup( Level.Invocation )
+    public void clearCache() {
+        expectiMax.clearCache();
+        abPruning.clearCache();
+        next = ( next + 1 ) % boards.length;
+    }
+
+    @Benchmark
+    public long expectiMax() {
+        return expectiMax.decideAction( boards[next] );
+    }
+
+    @Benchmark
+    public long abPruning() {
+        return abPruning.decideAction( boards[next] );
+    }
+}
@@ -0,0 +1,46 @@
+package Environment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces files in one step: the new content is written under a temporary name next to the file and then moved
+ * over it, so a reader never sees a half written file and a writer killed halfway leaves the old file intact.
+ */
+public final class AtomicFile {
+
+    /**
+     * Writes the content of a file to the temporary path it is given
+     */
+    public interface Content {
+        void writeTo(Path temporary) throws IOException;
+    }
+
+    private AtomicFile(){}
+
+    public static void write(Path path, Content content) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        content.writeTo(temporary);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the remaining bytes of the buffers, in order, as the content of the file
+     */
+    public static void write(Path path, ByteBuffer... buffers) throws IOException {
+        write(path, temporary -> {
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                for(ByteBuffer buffer : buffers){
+                    while(buffer.hasRemaining()){
+                        channel.write(buffer);
+                    }
+                }
+            }
+        });
+    }
+}
@@ -126,6 +126,16 @@ public class BitBoard {
     public static long[] leftMoves = TableGenerator.leftMoves;
     public static long[] rightMoves = TableGenerator.rightMoves;
 
+    /**
+     * Column move tables for up and down merges. After transposing the board each column
+     * is a row, the table value is the merged column already placed in the rightmost column,
+     * so it just needs to be shifted left into the column it came from.
+     *
+     * This makes vertical moves cost one transpose and four lookups, instead of two full rotations.
+     */
+    public static long[] upColumns = TableGenerator.upColumns;
+    public static long[] downColumns = TableGenerator.downColumns;
+
 
     /**
      * Used for adding tiles
@@ -166,29 +176,57 @@ public class BitBoard {
     /**
      * Performs an upward merge on a 2048 bitboard.
      * We achieve this by:
-     * 1.) Rotate the board clockwise
-     * 2.) Perform a right merge
-     * 3.) Rotate the board counter clockwise into its original orientation
+     * 1.) Transpose the board, so each column becomes a row
+     * 2.) Look up the merged column of each row in upColumns
+     * 3.) Shift each merged column back into its original position
      *
      * @param board target bitboard
      * @return the resultant board after an upwards mergs
      */
     public static long moveUp( long board ) {
-        return rotateCounterClockwise( moveRight( rotateClockwise( board ) ) );
+        long t = transpose( board );
+        long c1 = upColumns[(int)( ( t & rowMasks[0] ) >>> 48 )] << 12;
+        long c2 = upColumns[(int)( ( t & rowMasks[1] ) >>> 32 )] << 8;
+        long c3 = upColumns[(int)( ( t & rowMasks[2] ) >>> 16 )] << 4;
+        long c4 = upColumns[(int)  ( t & rowMasks[3] )];
+
+        return c1 | c2 | c3 | c4;
     }
 
     /**
      * Performs an downward merge on a 2048 bitboard.
-     * We achieve this by:
-     * 1.) Rotate the board counter clockwise
-     * 2.) Perform a right merge
-     * 3.) Rotate the board clockwise into its original orientation
+     * Same as moveUp, using the downColumns table.
      *
      * @param board target bitboard
      * @return the resultant board after a downwards merge
      */
     public static long moveDown( long board ) {
-        return rotateClockwise( moveRight( rotateCounterClockwise( board ) ) );
+        long t = transpose( board );
+        long c1 = downColumns[(int)( ( t & rowMasks[0] ) >>> 48 )] << 12;
+        long c2 = downColumns[(int)( ( t & rowMasks[1] ) >>> 32 )] << 8;
+        long c3 = downColumns[(int)( ( t & rowMasks[2] ) >>> 16 )] << 4;
+        long c4 = downColumns[(int)  ( t & rowMasks[3] )];
+
+        return c1 | c2 | c3 | c4;
+    }
+
+    /**
+     * Transposes the board, tile [row][col] moves to [col][row]
+     *
+     * @param board target bitboard
+     * @return the transposed board
+     */
+    public static long transpose( long board ){
+        long result = board & 0xF0000F0000F0000FL;
+        result = result | ((board & 0X0F0000F0000F0000L) >>> 12);
+        result = result | ((board & 0x00F0000F00000000L) >>> 24);
+        result = result | ((board & 0x000F000000000000L) >>> 36);
+
+        result = result | ((board & 0x0000F0000F0000F0L) << 12);
+        result = result | ((board & 0x00000000F0000F00L) << 24);
+        result = result | ((board & 0x000000000000F000L) << 36);
+
+        return result;
     }
 
     public static long rotateClockwise( long board ){
@@ -208,6 +246,58 @@ public class BitBoard {
         return result;
     }
 
+    /**
+     * Applies one of the 8 symmetries of the square to the board: symmetry % 4 clockwise rotations,
+     * followed by a transpose when symmetry >= 4. Symmetry 0 is the board itself.
+     *
+     * @param board target bitboard
+     * @param symmetry between 0 and 7
+     * @return the board seen through that symmetry
+     */
+    public static long symmetry( long board, int symmetry ){
+        for( int i = 0; i < ( symmetry & 3 ); i++ ){
+            board = rotateClockwise( board );
+        }
+        return symmetry >= 4 ? transpose( board ) : board;
+    }
+
+    /**
+     * The canonical form of a board: the smallest of its 8 rotations and reflections.
+     * Boards that are rotations or reflections of each other have the same canonical form.
+     *
+     * @param board target bitboard
+     * @return the smallest of the board's symmetries
+     */
+    public static long canonicalize( long board ){
+        long canonical = Math.min( board, transpose( board ) );
+        for( int i = 1; i < 4; i++ ){
+            board = rotateClockwise( board );
+            canonical = Math.min( canonical, Math.min( board, transpose( board ) ) );
+        }
+        return canonical;
+    }
+
+    /**
+     * Folds every tile into its lowest bit, leaving a 1 in the lowest bit of each empty tile
+     * and 0 everywhere else (the same trick isFull uses).
+     *
+     * e.g. 0x0120000000000000L -> 0x1001111111111111L
+     *
+     * To visit every empty tile, lowest first, take the lowest set bit and clear it each time:
+     *
+     * for( long empty = emptyMask( board ); empty != 0; empty &= empty - 1 ) {
+     *     int shift = Long.numberOfTrailingZeros( empty ); // ( board >>> shift ) & 0xF is the empty tile
+     * }
+     *
+     * @param board The bitboard state
+     * @return a mask with bit 4 * n set for every empty tile n
+     */
+    public static long emptyMask( long board ){
+        board |= ( board >> 2 ) & 0x3333333333333333L;
+        board |= ( board >> 1 );
+        return ~board & 0x1111111111111111L;
+    }
+
     public static boolean isFull( long board ){
         board |= ( board >> 2 ) & 0x3333333333333333L;
         board |= ( board >> 1 );
@@ -220,17 +310,13 @@ public class BitBoard {
     }
 
     public static int emptySpaces( long board ){
-        int emptySpaces = 0;
-        for( int row = 0; row < 4; row++ ){
-            for( int col = 0; col < 4; col++ ){
-                if( ( board & masks[row][col] ) == 0){
-                    emptySpaces++;
-                }
-            }
-        }
-        return emptySpaces;
+        return Long.bitCount( emptyMask( board ) );
     }
 
+    /**
+     * Adds a random tile using the shared static generator. Games that need to be reproducible,
+     * or that run on several threads, should use their own TileSpawner instead.
+     */
     public static long addTile(long board){
         long tile = 1L;
         long ranVal = rng.nextInt(10) + 1;
@@ -0,0 +1,123 @@
+package Environment;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The weights TableGenerator.heuristicsTable scores a row with.
+ *
+ * empty              added for every empty tile
+ * merge              added for every pair of equal neighbouring tiles
+ * cornerMax          added when the largest tile of the row is at either end
+ * otherMax           added when it is not (a penalty, so negative)
+ * monotonicity       subtracted times how far the row is from being monotonic: the smaller of the
+ *                    increases and decreases along the row, each tile counted as rank ^ monotonicityPower
+ * monotonicityPower  see monotonicity
+ * smoothness         subtracted times the rank difference of every pair of neighbouring non empty tiles
+ *
+ * The defaults are the weights the table has always been built with (monotonicity and smoothness off).
+ *
+ * Weight sets are read from a properties file, any weight not in the file keeps its default:
+ *
+ * merge = 3500
+ * monotonicity = 47
+ * smoothness = 200
+ *
+ * Weight sets are values, two sets with the same weights are equal, so they can key a cache of tables.
+ */
+public final class HeuristicWeights {
+
+    public static final String[] NAMES = {
+            "empty", "merge", "cornerMax", "otherMax", "monotonicity", "monotonicityPower", "smoothness"
+    };
+
+    public static final HeuristicWeights DEFAULT = new HeuristicWeights(new double[]{2000, 3000, 50000, -10000, 0, 4, 0});
+
+    private final double[] weights;
+
+    private HeuristicWeights(double[] weights){
+        this.weights = weights;
+    }
+
+    /**
+     * @param weights the weights in the order of NAMES
+     */
+    public static HeuristicWeights fromArray(double[] weights){
+        if(weights.length != NAMES.length){
+            throw new IllegalArgumentException("Expected " + NAMES.length + " weights, got " + weights.length);
+        }
+        return new HeuristicWeights(weights.clone());
+    }
+
+    /**
+     * @return the weights in the order of NAMES
+     */
+    public double[] toArray(){
+        return weights.clone();
+    }
+
+    public double empty(){ return weights[0]; }
+    public double merge(){ return weights[1]; }
+    public double cornerMax(){ return weights[2]; }
+    public double otherMax(){ return weights[3]; }
+    public double monotonicity(){ return weights[4]; }
+    public double monotonicityPower(){ return weights[5]; }
+    public double smoothness(){ return weights[6]; }
+
+    /**
+     * Reads a weight set from a properties file, unknown names are rejected so a typo does not go unnoticed
+     */
+    public static HeuristicWeights load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try(Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)){
+            properties.load(in);
+        }
+        return fromProperties(properties);
+    }
+
+    public static HeuristicWeights fromProperties(Properties properties){
+        double[] weights = DEFAULT.toArray();
+        for(String name : properties.stringPropertyNames()){
+            int index = Arrays.asList(NAMES).indexOf(name);
+            if(index < 0){
+                throw new IllegalArgumentException("Unknown weight: " + name + ", expected one of " + Arrays.toString(NAMES));
+            }
+            weights[index] = Double.parseDouble(properties.getProperty(name).trim());
+        }
+        return new HeuristicWeights(weights);
+    }
+
+    /**
+     * Writes every weight in the format load reads
+     */
+    public void store(Path path) throws IOException {
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))){
+            out.print(toString());
+        }
+    }
+
+    @Override
+    public boolean equals(Object other){
+        return other instanceof HeuristicWeights && Arrays.equals(weights, ((HeuristicWeights)other).weights);
+    }
+
+    @Override
+    public int hashCode(){
+        return Arrays.hashCode(weights);
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < NAMES.length; i++){
+            text.append(NAMES[i]).append(" = ").append(weights[i]).append('\n');
+        }
+        return text.toString();
+    }
+}
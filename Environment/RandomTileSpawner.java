@@ -0,0 +1,73 @@
+package Environment;
+
+import java.util.SplittableRandom;
+
+/**
+ * Spawns a 2 (90%) or a 4 (10%) on a uniformly chosen empty square, from its own SplittableRandom.
+ *
+ * A game played with a spawner created from the same seed, by a deterministic engine, replays exactly.
+ * Since every game owns its generator there is no contention between games running on different threads,
+ * use split() to derive independent spawners from one seeded spawner.
+ */
+public class RandomTileSpawner implements TileSpawner {
+
+    private final SplittableRandom rng;
+
+    public RandomTileSpawner(long seed){
+        this(new SplittableRandom(seed));
+    }
+
+    private RandomTileSpawner(SplittableRandom rng){
+        this.rng = rng;
+    }
+
+    /**
+     * @return a new spawner with a generator split from this one
+     */
+    public RandomTileSpawner split(){
+        return new RandomTileSpawner(rng.split());
+    }
+
+    @Override
+    public long spawn(long board){
+        long empty = BitBoard.emptyMask(board);
+        int emptySpaces = Long.bitCount(empty);
+        if(emptySpaces == 0){
+            return board;
+        }
+        long tile = rng.nextInt(10) == 0 ? 2L : 1L;
+        return board | (tile << selectTile(empty, rng.nextInt(emptySpaces)));
+    }
+
+    /**
+     * Finds the n'th empty tile (counting from the lowest bits) without looping over the board,
+     * by binary searching the halves, quarters, eighths and sixteenths of the empty mask with bitCount.
+     *
+     * @param empty mask from BitBoard.emptyMask
+     * @param n index of the empty tile to find, less than Long.bitCount(empty)
+     * @return the shift that places a tile on that square
+     */
+    public static int selectTile(long empty, int n){
+        int shift = 0;
+        int lower = Long.bitCount(empty & 0xFFFFFFFFL);
+        if(n >= lower){
+            n -= lower;
+            shift += 32;
+        }
+        lower = Long.bitCount((empty >>> shift) & 0xFFFFL);
+        if(n >= lower){
+            n -= lower;
+            shift += 16;
+        }
+        lower = Long.bitCount((empty >>> shift) & 0xFFL);
+        if(n >= lower){
+            n -= lower;
+            shift += 8;
+        }
+        lower = Long.bitCount((empty >>> shift) & 0xFL);
+        if(n >= lower){
+            shift += 4;
+        }
+        return shift;
+    }
+}
@@ -0,0 +1,85 @@
+package Environment;
+
+/**
+ * Precomputed results of moving every possible 16 bit row, built by TableGenerator.enumerateMoves().
+ *
+ * Every table is indexed by the row itself, so all 65536 rows have an entry
+ * (including 0xFFFF, a row of four 32768 tiles).
+ *
+ * leftMoves / rightMoves  the row after a left / right merge
+ * upColumns / downColumns the merged column, unpacked into the rightmost column of a board (see BitBoard.moveUp)
+ * leftScores / rightScores the score earned by the merge (the sum of the merged tiles), see MoveGenerator.score
+ */
+public class RowTables {
+
+    public static final int SIZE = 65536;
+
+    public final long[] leftMoves = new long[SIZE];
+    public final long[] rightMoves = new long[SIZE];
+    public final long[] upColumns = new long[SIZE];
+    public final long[] downColumns = new long[SIZE];
+    public final int[] leftScores = new int[SIZE];
+    public final int[] rightScores = new int[SIZE];
+
+
+    /**
+     * Checks every entry against referenceMerge, a plain implementation of a right merge
+     *
+     * @throws IllegalStateException naming the first row whose entries do not match
+     */
+    public void validate(){
+        int[] score = new int[1];
+        for(int row = 0; row < SIZE; row++){
+            long right = referenceMerge(row, score);
+            int reversed = (int)TableGenerator.reverse(row);
+            long left = TableGenerator.reverse(right);
+
+            if(rightMoves[row] != right || rightScores[row] != score[0]){
+                throw mismatch("right", row);
+            }
+            if(leftMoves[reversed] != left || leftScores[reversed] != score[0]){
+                throw mismatch("left", reversed);
+            }
+            if(downColumns[row] != TableGenerator.unpackColumn(right)){
+                throw mismatch("down", row);
+            }
+            if(upColumns[reversed] != TableGenerator.unpackColumn(left)){
+                throw mismatch("up", reversed);
+            }
+        }
+    }
+
+    /**
+     * Merges a row to the right one tile at a time. The lowest 4 bits are the rightmost tile.
+     * Each tile merges at most once per move, and two 32768 tiles do not merge.
+     *
+     * @param row the row to merge
+     * @param score score[0] is set to the score earned by the merge
+     * @return the merged row
+     */
+    public static long referenceMerge(int row, int[] score){
+        int[] tiles = new int[4];
+        int count = 0;
+        boolean merged = false;
+        score[0] = 0;
+        for(int i = 0; i < 4; i++){
+            int tile = (row >>> (i * 4)) & 0xF;
+            if(tile == 0){
+                continue;
+            }
+            if(count > 0 && !merged && tiles[count - 1] == tile && tile != 0xF){
+                tiles[count - 1]++;
+                score[0] += 1 << tiles[count - 1];
+                merged = true;
+            }else{
+                tiles[count++] = tile;
+                merged = false;
+            }
+        }
+        return tiles[0] | (tiles[1] << 4) | (tiles[2] << 8) | ((long)tiles[3] << 12);
+    }
+
+    private static IllegalStateException mismatch(String table, int row){
+        return new IllegalStateException("Row table " + table + " does not match the reference merge for row 0x" + Integer.toHexString(row));
+    }
+}
@@ -0,0 +1,144 @@
+package Environment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Precomputed lookup tables stored in a binary file, so a JVM can map them instead of
+ * running TableGenerator.enumerateMoves() and heuristicsTable() on startup.
+ *
+ * Generate the file once with:
+ *
+ * java Environment.TableFile tables.bin [weights.properties]
+ *
+ * and start the JVM with -Dbitboard.tables=tables.bin
+ *
+ * The heuristic table is built from a HeuristicWeights (the defaults unless a weights file is given), and the
+ * weights are stored with it, so the table is only ever used as the table of those weights.
+ *
+ * The file layout (big endian) is:
+ *
+ * int  magic    0x32303438 ("2048")
+ * int  version
+ * int  rows     always RowTables.SIZE
+ * long checksum CRC32 of everything after the header
+ * double[HeuristicWeights.NAMES.length] the weights the heuristic table was built from
+ * char[rows]    the result of a right merge of every row, the other move tables and scores are derived from it
+ * double[rows]  the heuristic score of every row
+ */
+public class TableFile {
+
+    public static final String PROPERTY = "bitboard.tables";
+
+    private static final int MAGIC = 0x32303438;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final int WEIGHTS_SIZE = HeuristicWeights.NAMES.length * Double.BYTES;
+    private static final int PAYLOAD_SIZE = WEIGHTS_SIZE + RowTables.SIZE * ( Character.BYTES + Double.BYTES );
+
+    public final RowTables rowTables;
+    public final HeuristicWeights weights;
+    public final double[] heuristics;
+
+    private TableFile(RowTables rowTables, HeuristicWeights weights, double[] heuristics){
+        this.rowTables = rowTables;
+        this.weights = weights;
+        this.heuristics = heuristics;
+    }
+
+    /**
+     * Maps and reads a table file
+     *
+     * @param path the file to read, may be null
+     * @return the tables, or null if the path is null, the file is missing,
+     *         or its header or checksum do not match
+     */
+    public static TableFile load(String path){
+        if(path == null || !Files.isRegularFile(Paths.get(path))){
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)){
+            if(channel.size() != HEADER_SIZE + PAYLOAD_SIZE){
+                return invalid(path, "wrong size");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != RowTables.SIZE){
+                return invalid(path, "wrong header");
+            }
+            long checksum = buffer.getLong();
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if(crc.getValue() != checksum){
+                return invalid(path, "checksum mismatch");
+            }
+
+            double[] weights = new double[HeuristicWeights.NAMES.length];
+            payload.asDoubleBuffer().get(weights);
+            payload.position(WEIGHTS_SIZE);
+            CharBuffer rows = payload.slice().asCharBuffer();
+            RowTables tables = new RowTables();
+            for(int row = 0; row < RowTables.SIZE; row++){
+                TableGenerator.addRow(tables, row, rows.get(row));
+            }
+            double[] heuristics = new double[RowTables.SIZE];
+            payload.position(WEIGHTS_SIZE + RowTables.SIZE * Character.BYTES);
+            payload.asDoubleBuffer().get(heuristics);
+            return new TableFile(tables, HeuristicWeights.fromArray(weights), heuristics);
+        }catch(IOException e){
+            return invalid(path, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the tables, with the heuristic table of the given weights, to a file. The file is written under
+     * a temporary name and then moved into place, so a JVM starting at the same time never maps a half written file.
+     */
+    public static void write(Path path, RowTables tables, HeuristicWeights weights) throws IOException {
+        double[] heuristics = TableGenerator.heuristicsTable(weights);
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_SIZE);
+        payload.asDoubleBuffer().put(weights.toArray());
+        payload.position(WEIGHTS_SIZE);
+        CharBuffer rows = payload.slice().asCharBuffer();
+        for(int row = 0; row < RowTables.SIZE; row++){
+            rows.put((char)tables.rightMoves[row]);
+        }
+        payload.position(WEIGHTS_SIZE + RowTables.SIZE * Character.BYTES);
+        DoubleBuffer scores = payload.asDoubleBuffer();
+        scores.put(heuristics);
+        payload.clear();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RowTables.SIZE).putLong(crc.getValue());
+        header.flip();
+
+        AtomicFile.write(path, header, payload);
+    }
+
+    private static TableFile invalid(String path, String reason){
+        System.err.println("Ignoring table file " + path + " (" + reason + "), computing tables instead");
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1 && args.length != 2){
+            System.err.println("Usage: java Environment.TableFile <output file> [weights file]");
+            System.exit(1);
+        }
+        HeuristicWeights weights = args.length == 2 ? HeuristicWeights.load(Paths.get(args[1])) : HeuristicWeights.DEFAULT;
+        write(Paths.get(args[0]), TableGenerator.enumerateMoves(), weights);
+        System.out.println("Wrote tables to " + args[0]);
+    }
+}
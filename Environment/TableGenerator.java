@@ -1,6 +1,5 @@
 package Environment;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -19,10 +18,34 @@ public class TableGenerator {
      *
      */
 
-    public static long[] leftMoves = new long[65535];
-    public static long[] rightMoves = new long[65535];
-    public static HashMap<Long, Long> upMoves = new HashMap<>();
-    public static HashMap<Long, Long> downMoves = new HashMap<>();
+    /**
+     * Tables loaded from the file named by the TableFile.PROPERTY system property,
+     * null when it is not set or the file is missing or corrupt, in which case the tables are computed
+     */
+    private static TableFile tableFile = TableFile.load(System.getProperty(TableFile.PROPERTY));
+
+    public static RowTables rowTables = tableFile != null ? tableFile.rowTables : enumerateMoves();
+
+    public static long[] leftMoves = rowTables.leftMoves;
+    public static long[] rightMoves = rowTables.rightMoves;
+
+    /**
+     * Column tables, indexed by a column read top to bottom as a row (the highest 4 bits are the top tile).
+     * The value is the merged column, unpacked into the rightmost column of a board
+     * so it only has to be shifted into place.
+     */
+    public static long[] upColumns = rowTables.upColumns;
+    public static long[] downColumns = rowTables.downColumns;
+
+    /**
+     * The weights heuristics was built from, the defaults unless the table file holds the table of other weights
+     */
+    public static HeuristicWeights heuristicWeights = tableFile != null ? tableFile.weights : HeuristicWeights.DEFAULT;
+
+    /**
+     * Heuristic score of every row with heuristicWeights, see heuristicsTable(HeuristicWeights)
+     */
+    public static double[] heuristics = tableFile != null ? tableFile.heuristics : heuristicsTable();
 
     public static HashMap<Long, List<Long>> addTwoTiles = new HashMap<>();
 
@@ -61,35 +84,67 @@ public class TableGenerator {
     };
 
 
-    static {
-        enumerateMoves();
-    }
-
-    public static void enumerateMoves(){
+    /**
+     * Builds the move tables for all 65536 rows, then checks every entry against
+     * RowTables' reference merge before anything uses them.
+     */
+    public static RowTables enumerateMoves(){
+        RowTables tables = new RowTables();
 
-        for(long i = 0; i < 65535; i++){
+        for(long i = 0; i < RowTables.SIZE; i++){
             long row = i;
             long result = mergeRow((i & 0x000000000000F000L), (i & 0x0000000000000F00L), (i & 0x00000000000000F0L), (i & 0x000000000000000FL));
-            rightMoves[(int)row] = result;
-            leftMoves[(int)reverse(row)] = reverse(result);
-            upMoves.put(rotateUp(row), rotateUp(result));
-            downMoves.put(rotateDown(row), rotateDown(result));
+            addRow(tables, row, result);
         }
+        tables.validate();
+        return tables;
     }
 
+    /**
+     * Fills every table entry derived from the right merge of a row
+     *
+     * @param tables the tables to fill
+     * @param row the row
+     * @param result the row after a right merge
+     */
+    public static void addRow(RowTables tables, long row, long result){
+        int score = buildScore(result) - buildScore(row);
+        int reversed = (int)reverse(row);
+        tables.rightMoves[(int)row] = result;
+        tables.leftMoves[reversed] = reverse(result);
+        tables.downColumns[(int)row] = unpackColumn(result);
+        tables.upColumns[reversed] = unpackColumn(reverse(result));
+        tables.rightScores[(int)row] = score;
+        tables.leftScores[reversed] = score;
+    }
 
-    public static long rotateUp(long row){
-        long result =     (row & 0x000000000000000FL) << 48;
-        result = result | (row & 0x00000000000000F0L) << 28;
-        result = result | (row & 0x0000000000000F00L) << 8;
-        result = result | (row & 0x000000000000F000L) >>> 12;
-        return result;
+    /**
+     * The score it takes to build every tile in a row from 2's, a tile of 2^n is worth (n - 1) * 2^n.
+     * Merging two 2^n tiles into a 2^(n+1) increases this by exactly 2^(n+1), which is the
+     * score the merge earns, so the score of a move is buildScore(result) - buildScore(row)
+     */
+    public static int buildScore(long row){
+        int score = 0;
+        for(int i = 0; i < 16; i += 4){
+            int tile = (int)((row >>> i) & 0xF);
+            if(tile > 1){
+                score += (tile - 1) << tile;
+            }
+        }
+        return score;
     }
-    public static long rotateDown(long row){
-        long result =     (row & 0x000000000000000FL);
-        result = result | (row & 0x00000000000000F0L) << 12;
+
+
+    /**
+     * Spreads a row into the rightmost column of a board, the highest 4 bits of the row become the top tile
+     *
+     * i.e. 0x1234 -> 0x0001000200030004L
+     */
+    public static long unpackColumn(long row){
+        long result =     (row & 0x000000000000F000L) << 36;
         result = result | (row & 0x0000000000000F00L) << 24;
-        result = result | (row & 0x000000000000F000L) << 36;
+        result = result | (row & 0x00000000000000F0L) << 12;
+        result = result | (row & 0x000000000000000FL);
         return result;
     }
     public static long reverse(long row){
@@ -122,8 +177,8 @@ public class TableGenerator {
             }
 
         }
-        //mrege first tiles
-        if((p1 == (p2 >>> 4)) && p1 != 0){
+        //mrege first tiles, two 32768 tiles can not be merged as 65536 does not fit in 4 bits
+        if((p1 == (p2 >>> 4)) && p1 != 0 && p1 != 0xF){
             p1 = p1 + 1;
             p2 = p3 >>> 4;
             p3 = p4 >>> 4;
@@ -131,14 +186,14 @@ public class TableGenerator {
         }
 
         //second and third
-        if((p2 == (p3 >>> 4) && p2 != 0)){
+        if((p2 == (p3 >>> 4) && p2 != 0 && p2 != 0xF0)){
             p2 = ((p2 >>> 4) + 1) << 4;
             p3 = p4 >>> 4;
             p4 = 0;
         }
 
         //third and 4th
-        if((p3 == (p4 >>> 4) && p3 != 0)){
+        if((p3 == (p4 >>> 4) && p3 != 0 && p3 != 0xF00)){
             p3 = ((p3 >>> 8) + 1) << 8;
             p4 = 0;
         }
@@ -147,9 +202,16 @@ public class TableGenerator {
     }
 
     public static double[] heuristicsTable(){
-        double[] heuristics = new double[65536];
+        return heuristicsTable(HeuristicWeights.DEFAULT);
+    }
+
+    /**
+     * Scores every row with the given weights, see HeuristicWeights for what each weight rewards
+     */
+    public static double[] heuristicsTable(HeuristicWeights weights){
+        double[] heuristics = new double[RowTables.SIZE];
 
-        for(int row = 0; row < 65535; row++){
+        for(int row = 0; row < RowTables.SIZE; row++){
             int[] tiles = {
                     (row >>> 0) & (0xF),
                     (row >>> 4) & 0xF,
@@ -162,9 +224,9 @@ public class TableGenerator {
             int maxIndex = 0;
             for(int i = 0; i < 4; i++){
                 if(tiles[i] == 0){
-                    score += 2000.0;
+                    score += weights.empty();
                 }else if(tiles[i] == prev){
-                    score += 3000.0;
+                    score += weights.merge();
                 }
                 if(tiles[i] > max){
                     max = tiles[i];
@@ -173,10 +235,27 @@ public class TableGenerator {
                 prev = tiles[i];
             }
             if(maxIndex == 0 || maxIndex == 3){
-                score += 50000;
+                score += weights.cornerMax();
             }else{
-                score -= 10000;
+                score += weights.otherMax();
+            }
+
+            double increasing = 0.0;
+            double decreasing = 0.0;
+            double roughness = 0.0;
+            for(int i = 1; i < 4; i++){
+                double step = Math.pow(tiles[i], weights.monotonicityPower()) - Math.pow(tiles[i - 1], weights.monotonicityPower());
+                if(step > 0){
+                    increasing += step;
+                }else{
+                    decreasing -= step;
+                }
+                if(tiles[i] != 0 && tiles[i - 1] != 0){
+                    roughness += Math.abs(tiles[i] - tiles[i - 1]);
+                }
             }
+            score -= weights.monotonicity() * Math.min(increasing, decreasing);
+            score -= weights.smoothness() * roughness;
 
             heuristics[row] = score;
         }
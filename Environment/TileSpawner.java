@@ -0,0 +1,15 @@
+package Environment;
+
+/**
+ * Places the random tile that appears after every move.
+ *
+ * Each game should own its spawner, implementations are not expected to be shared between threads.
+ */
+public interface TileSpawner {
+
+    /**
+     * @param board The bitboard state after a move
+     * @return the board with one new tile on an empty square, or the board unchanged if it is full
+     */
+    long spawn(long board);
+}
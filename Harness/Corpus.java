@@ -0,0 +1,193 @@
+package Harness;
+
+import Environment.AtomicFile;
+import Environment.BitBoard;
+import Environment.RandomTileSpawner;
+import Environment.TileSpawner;
+import Search.ExpectiMax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a corpus of benchmark positions from self-play games, and reads and writes long[] files.
+ *
+ * Games are played by ExpectiMax with the SelfPlay settings, and every position a move was decided from is
+ * sorted into a game phase by its largest tile. Each phase keeps a uniform sample of --per-phase positions
+ * (reservoir sampling, in game order, so the same options always build the same corpus). The corpus lists the
+ * early, mid, late and end game positions in that order.
+ *
+ * The long[] file layout (big endian) is:
+ *
+ * int  magic  0x4C415252 ("LARR")
+ * int  count
+ * long[count] values
+ *
+ * Regression uses the same files for the corpus and for its reference moves.
+ *
+ * Usage:
+ *
+ * java -cp selfplay.jar Harness.Corpus --games 200 --per-phase 1000 --depth 2 --threads 8 --seed 1 --out corpus.bin
+ */
+public class Corpus {
+
+    private static final int MAGIC = 0x4C415252;
+    private static final int HEADER_SIZE = 8;
+
+    public static final String[] PHASES = {"early", "mid", "late", "end"};
+
+    /**
+     * Early game is below a 256 tile, mid game 256 and 512, late game 1024, end game 2048 and above
+     */
+    public static int phase(long board){
+        int largest = BitBoard.getLargestTile(board);
+        return largest < 256 ? 0 : largest < 1024 ? 1 : largest < 2048 ? 2 : 3;
+    }
+
+    private int games = 200;
+    private int perPhase = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1L;
+    private SelfPlay settings = new SelfPlay().depth(2).verbose(false);
+    private final ThreadLocal<ExpectiMax> engines = ThreadLocal.withInitial(() -> settings.engine());
+
+    public Corpus games(int games){ this.games = games; return this; }
+    public Corpus perPhase(int perPhase){ this.perPhase = perPhase; return this; }
+    public Corpus threads(int threads){ this.threads = threads; return this; }
+    public Corpus seed(long seed){ this.seed = seed; return this; }
+    public Corpus settings(SelfPlay settings){ this.settings = settings; return this; }
+
+    /**
+     * Plays the games and samples their positions
+     *
+     * @return the positions, early game first
+     */
+    public long[] generate() throws Exception {
+        long[][] samples = new long[PHASES.length][perPhase];
+        long[] seen = new long[PHASES.length];
+        Random rng = new Random(seed);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            List<Future<long[]>> futures = new ArrayList<>(games);
+            for(int g = 0; g < games; g++){
+                final long gameSeed = seed + g;
+                futures.add(pool.submit(() -> playGame(gameSeed)));
+            }
+            for(Future<long[]> future : futures){
+                for(long board : future.get()){
+                    int phase = phase(board);
+                    long index = seen[phase]++;
+                    if(index < perPhase){
+                        samples[phase][(int)index] = board;
+                    }else{
+                        long slot = (long)(rng.nextDouble() * (index + 1));
+                        if(slot < perPhase){
+                            samples[phase][(int)slot] = board;
+                        }
+                    }
+                }
+            }
+        }finally{
+            pool.shutdownNow();
+        }
+
+        long[] corpus = new long[0];
+        for(int phase = 0; phase < PHASES.length; phase++){
+            int count = (int)Math.min(seen[phase], perPhase);
+            System.out.println(PHASES[phase] + ": " + count + " positions sampled from " + seen[phase]);
+            int start = corpus.length;
+            corpus = Arrays.copyOf(corpus, start + count);
+            System.arraycopy(samples[phase], 0, corpus, start, count);
+        }
+        return corpus;
+    }
+
+    /**
+     * Plays a game with the calling thread's engine
+     *
+     * @return every position of the game a move was decided from
+     */
+    private long[] playGame(long gameSeed){
+        ExpectiMax engine = engines.get();
+        engine.newGame();
+        TileSpawner spawner = new RandomTileSpawner(gameSeed);
+        long[] boards = new long[1024];
+        int moves = 0;
+        long board = spawner.spawn(spawner.spawn(0L));
+        while(!BitBoard.isTerminal(board)){
+            if(moves == boards.length){
+                boards = Arrays.copyOf(boards, moves * 2);
+            }
+            boards[moves++] = board;
+            board = spawner.spawn(settings.decide(engine, board));
+        }
+        return Arrays.copyOf(boards, moves);
+    }
+
+    /**
+     * Maps a long[] file and copies its values
+     *
+     * @throws IOException if the file cannot be read, or its header or size are wrong
+     */
+    public static long[] read(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_SIZE){
+                throw new IOException(path + " is not a long[] file (too short)");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC){
+                throw new IOException(path + " is not a long[] file (wrong header)");
+            }
+            int count = buffer.getInt();
+            if(count < 0 || (long)count * Long.BYTES != buffer.remaining()){
+                throw new IOException(path + " is corrupt (wrong size)");
+            }
+            long[] values = new long[count];
+            buffer.asLongBuffer().get(values);
+            return values;
+        }
+    }
+
+    /**
+     * Writes the values under a temporary name and moves them into place
+     */
+    public static void write(Path path, long[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + values.length * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(values.length);
+        buffer.asLongBuffer().put(values);
+        buffer.rewind();
+
+        AtomicFile.write(path, buffer);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SelfPlay.parse(args);
+        SelfPlay settings = new SelfPlay().depth(2).verbose(false);
+        if(options.containsKey("depth")) settings.depth(Integer.parseInt(options.get("depth")));
+        if(options.containsKey("cache-mb")) settings.cacheMegabytes(Integer.parseInt(options.get("cache-mb")));
+        Corpus corpus = new Corpus().settings(settings);
+        if(options.containsKey("games")) corpus.games(Integer.parseInt(options.get("games")));
+        if(options.containsKey("per-phase")) corpus.perPhase(Integer.parseInt(options.get("per-phase")));
+        if(options.containsKey("threads")) corpus.threads(Integer.parseInt(options.get("threads")));
+        if(options.containsKey("seed")) corpus.seed(Long.parseLong(options.get("seed")));
+
+        Path out = Paths.get(options.getOrDefault("out", "corpus.bin"));
+        long[] positions = corpus.generate();
+        write(out, positions);
+        System.out.println("Wrote " + positions.length + " positions to " + out);
+    }
+}
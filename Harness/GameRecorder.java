@@ -0,0 +1,187 @@
+package Harness;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Appends games to a trace file, and reads them back.
+ *
+ * Games are collected in a buffer and written through a FileChannel opened for appending, so recording costs a
+ * few bytes per move and one write per 64 KB. Recording into an existing trace file adds to its games.
+ * Several games may be recorded at once from different threads.
+ *
+ * The file layout (big endian) is:
+ *
+ * int  magic    0x47545243 ("GTRC")
+ * int  version
+ * then for every game:
+ * int  length   number of bytes after the checksum
+ * int  checksum CRC32 of those bytes
+ * int  game, long seed, int moves
+ * long[moves + 1] the board before every move and the final board
+ * byte[moves]     the moves packed as described in GameTrace
+ *
+ * A run killed while writing leaves a cut off last game, which read skips and recording into the file again removes.
+ */
+public class GameRecorder implements Closeable {
+
+    private static final int MAGIC = 0x47545243;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Opens a trace file for appending, creating it if it does not exist
+     *
+     * @throws IOException if the file exists but is not a trace file
+     */
+    public GameRecorder(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if(channel.size() == 0){
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }else{
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            long end;
+            try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)){
+                in.read(header, 0);
+                end = completeLength(in);
+            }
+            header.flip();
+            if(header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION){
+                channel.close();
+                throw new IOException(path + " is not a game trace file");
+            }
+            if(end < channel.size()){
+                channel.truncate(end);
+            }
+        }
+    }
+
+    /**
+     * @return the length of the file up to the end of its last complete game
+     */
+    private static long completeLength(FileChannel in) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(4);
+        long end = HEADER_SIZE;
+        while(end + 8 <= in.size()){
+            prefix.clear();
+            in.read(prefix, end);
+            int length = prefix.getInt(0);
+            long next = end + 8 + length;
+            if(length < 16 || next > in.size()){
+                break;
+            }
+            end = next;
+        }
+        return end;
+    }
+
+    public synchronized void record(GameTrace trace) throws IOException {
+        int moves = trace.moves();
+        int length = 16 + (moves + 1) * Long.BYTES + moves;
+        ByteBuffer body = ByteBuffer.allocate(length);
+        body.putInt(trace.game).putLong(trace.seed).putInt(moves);
+        for(int i = 0; i <= moves; i++){
+            body.putLong(trace.board(i));
+        }
+        for(int i = 0; i < moves; i++){
+            body.put(trace.action(i));
+        }
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        if(buffer.remaining() < 8 + length){
+            flush();
+        }
+        if(buffer.remaining() < 8 + length){
+            ByteBuffer prefix = ByteBuffer.allocate(8).putInt(length).putInt((int)crc.getValue());
+            prefix.flip();
+            write(prefix, body);
+        }else{
+            buffer.putInt(length).putInt((int)crc.getValue()).put(body);
+        }
+    }
+
+    /**
+     * Writes the buffered games to the file
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try{
+            flush();
+        }finally{
+            channel.close();
+        }
+    }
+
+    private void write(ByteBuffer... buffers) throws IOException {
+        while(buffers[buffers.length - 1].hasRemaining()){
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Maps a trace file and reads every complete game in it
+     *
+     * @throws IOException if the file cannot be read, is not a trace file, or a game fails its checksum
+     */
+    public static List<GameTrace> read(Path path) throws IOException {
+        try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)){
+            if(in.size() < HEADER_SIZE){
+                throw new IOException(path + " is not a game trace file (too short)");
+            }
+            MappedByteBuffer file = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if(file.getInt() != MAGIC || file.getInt() != VERSION){
+                throw new IOException(path + " is not a game trace file (wrong header)");
+            }
+            List<GameTrace> traces = new ArrayList<>();
+            while(file.remaining() >= 8){
+                int length = file.getInt();
+                long checksum = file.getInt() & 0xFFFFFFFFL;
+                if(length < 16 || length > file.remaining()){
+                    break;
+                }
+                ByteBuffer body = file.slice();
+                body.limit(length);
+                file.position(file.position() + length);
+                CRC32 crc = new CRC32();
+                crc.update(body.duplicate());
+                if(crc.getValue() != checksum){
+                    throw new IOException(path + " is corrupt (checksum mismatch in game " + traces.size() + ")");
+                }
+
+                int game = body.getInt();
+                long seed = body.getLong();
+                int moves = body.getInt();
+                if(length != 16 + (moves + 1) * Long.BYTES + moves){
+                    throw new IOException(path + " is corrupt (wrong length of game " + traces.size() + ")");
+                }
+                long[] boards = new long[moves + 1];
+                body.asLongBuffer().get(boards);
+                body.position(body.position() + boards.length * Long.BYTES);
+                byte[] actions = new byte[moves];
+                body.get(actions);
+                traces.add(new GameTrace(game, seed, boards, actions));
+            }
+            return traces;
+        }
+    }
+}
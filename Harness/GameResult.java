@@ -0,0 +1,58 @@
+package Harness;
+
+import Environment.BitBoard;
+import Environment.TableGenerator;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of a single self-play game, and the time each of its decisions took.
+ */
+public class GameResult {
+
+    public final int game;
+    public final long seed;
+    public final long finalBoard;
+    public final int maxTile;
+    public final int score;
+    public final int moves;
+
+    /**
+     * Time taken by each decision in nanoseconds, in the order they were made
+     */
+    public final long[] moveNanos;
+
+    public GameResult(int game, long seed, long finalBoard, int foursSpawned, long[] moveNanos, int moves){
+        this.game = game;
+        this.seed = seed;
+        this.finalBoard = finalBoard;
+        this.maxTile = BitBoard.getLargestTile(finalBoard);
+        this.score = score(finalBoard, foursSpawned);
+        this.moves = moves;
+        this.moveNanos = Arrays.copyOf(moveNanos, moves);
+    }
+
+    /**
+     * The game score is the sum of every merged tile. Building every tile on the board from 2's
+     * earns TableGenerator.buildScore, except that a spawned 4 was never merged, so it earns 4 less.
+     *
+     * @param board the final board
+     * @param foursSpawned the number of 4 tiles placed during the game
+     * @return the score of the game
+     */
+    public static int score(long board, int foursSpawned){
+        int score = 0;
+        for(int row = 0; row < 4; row++){
+            score += TableGenerator.buildScore((board >>> (row * 16)) & 0xFFFFL);
+        }
+        return score - 4 * foursSpawned;
+    }
+
+    public long totalNanos(){
+        long total = 0;
+        for(long nanos : moveNanos){
+            total += nanos;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,111 @@
+package Harness;
+
+import Search.MoveGenerator;
+
+import java.util.Arrays;
+
+/**
+ * The moves of one recorded game: the board before every move, the direction chosen and where the tile after it
+ * was spawned. boards holds one more board than there are moves, the last one is the final board.
+ *
+ * Every move is packed in a byte: bits 0-1 the direction (MoveGenerator.LEFT to DOWN), bits 2-5 the cell the tile
+ * was spawned on (0 to 15, row by row from the top left, so cell n is the nibble at bit 60 - 4n) and bit 6 set
+ * when the spawned tile was a 4.
+ */
+public class GameTrace {
+
+    public final int game;
+    public final long seed;
+    private final long[] boards;
+    private final byte[] actions;
+
+    GameTrace(int game, long seed, long[] boards, byte[] actions){
+        if(boards.length != actions.length + 1){
+            throw new IllegalArgumentException("A trace of " + actions.length + " moves needs " + (actions.length + 1) + " boards, got " + boards.length);
+        }
+        this.game = game;
+        this.seed = seed;
+        this.boards = boards;
+        this.actions = actions;
+    }
+
+    public int moves(){ return actions.length; }
+
+    /**
+     * @return the board before move i, or the final board for i == moves()
+     */
+    public long board(int i){ return boards[i]; }
+
+    public long finalBoard(){ return boards[actions.length]; }
+
+    public int direction(int i){ return actions[i] & 0x3; }
+
+    public int spawnCell(int i){ return (actions[i] >>> 2) & 0xF; }
+
+    public boolean spawnedFour(int i){ return (actions[i] & 0x40) != 0; }
+
+    /**
+     * @return the board after move i, before its tile was spawned
+     */
+    public long afterstate(int i){ return MoveGenerator.move(boards[i], direction(i)); }
+
+    byte action(int i){ return actions[i]; }
+
+    /**
+     * @return the direction of the legal move that turns board into afterstate, or -1 if none does
+     */
+    public static int direction(long board, long afterstate){
+        long[] moves = new long[4];
+        int[] directions = new int[4];
+        int count = MoveGenerator.generateMoves(board, moves, directions);
+        for(int i = 0; i < count; i++){
+            if(moves[i] == afterstate){
+                return directions[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the moves of a game as it is played
+     */
+    static class Builder {
+        private final int game;
+        private final long seed;
+        private long[] boards = new long[1024];
+        private byte[] actions = new byte[1024];
+        private int moves = 0;
+
+        Builder(int game, long seed, long start){
+            this.game = game;
+            this.seed = seed;
+            this.boards[0] = start;
+        }
+
+        /**
+         * @param afterstate the board after the move
+         * @param next the board after the spawned tile, the board before the next move
+         */
+        void add(long afterstate, long next){
+            long board = boards[moves];
+            int direction = direction(board, afterstate);
+            long spawned = next ^ afterstate;
+            if(direction < 0 || Long.bitCount(spawned) != 1){
+                throw new IllegalArgumentException(String.format("Not a move and a spawn: %016x -> %016x -> %016x", board, afterstate, next));
+            }
+            int shift = Long.numberOfTrailingZeros(spawned) & ~0x3;
+            int cell = 15 - shift / 4;
+            boolean four = (spawned >>> shift) == 2L;
+            if(moves + 1 == boards.length){
+                boards = Arrays.copyOf(boards, boards.length * 2);
+                actions = Arrays.copyOf(actions, actions.length * 2);
+            }
+            actions[moves++] = (byte)(direction | cell << 2 | (four ? 0x40 : 0));
+            boards[moves] = next;
+        }
+
+        GameTrace build(){
+            return new GameTrace(game, seed, Arrays.copyOf(boards, moves + 1), Arrays.copyOf(actions, moves));
+        }
+    }
+}
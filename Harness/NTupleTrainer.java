@@ -0,0 +1,185 @@
+package Harness;
+
+import Environment.BitBoard;
+import Environment.RandomTileSpawner;
+import Environment.TileSpawner;
+import Search.MoveGenerator;
+import Search.NTupleNetwork;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trains an NTupleNetwork offline with temporal difference learning on afterstates (TD(0), as in Szubert and
+ * Jaskowski's 2048 players).
+ *
+ * Every game is played greedily: each move picks the afterstate (the board after the move, before the new tile)
+ * with the highest merge reward plus network value. After the next move is picked, the previous afterstate's value
+ * is moved towards the reward of the next move plus the value of the next afterstate, and the last afterstate
+ * of a game towards 0. Training threads play their own games and update the shared network without locking.
+ *
+ * Every --report-every games the mean score (GameResult.score, the same score SelfPlay reports) and the share of
+ * games that reached 2048 are printed. The network is saved every --save-every games and at the end. If the output
+ * file already exists training continues from its weights and tuples, pass a different --seed to continue on new
+ * games. Tuples given with --tuples must then be the ones in the file.
+ *
+ * Usage:
+ *
+ * java -cp selfplay.jar Harness.NTupleTrainer --games 100000 --tuples 4 --alpha 0.0025 --threads 8 --seed 1 --out ntuple.bin
+ *
+ * and search with the network by passing NTupleNetwork.load(path) to ExpectiMax.setEvaluator.
+ */
+public class NTupleTrainer {
+
+    private int games = 100000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private float alpha = 0.0025f;
+    private long seed = 1L;
+    private int saveEvery = 10000;
+    private int reportEvery = 1000;
+    private int[][] tuples = null;
+    private Path out = Paths.get("ntuple.bin");
+
+    public NTupleTrainer games(int games){ this.games = games; return this; }
+    public NTupleTrainer threads(int threads){ this.threads = threads; return this; }
+    public NTupleTrainer alpha(float alpha){ this.alpha = alpha; return this; }
+    public NTupleTrainer seed(long seed){ this.seed = seed; return this; }
+    public NTupleTrainer saveEvery(int saveEvery){ this.saveEvery = saveEvery; return this; }
+    public NTupleTrainer reportEvery(int reportEvery){ this.reportEvery = reportEvery; return this; }
+    public NTupleTrainer tuples(int[][] tuples){ this.tuples = tuples; return this; }
+    public NTupleTrainer out(Path out){ this.out = out; return this; }
+
+    /**
+     * Trains a new network, with FOUR_TUPLES unless other tuples were given, or continues the one in the output file
+     *
+     * @throws IllegalArgumentException if tuples were given that differ from the ones of the network in the output file
+     */
+    public NTupleNetwork run() throws Exception {
+        NTupleNetwork network;
+        if(Files.exists(out)){
+            network = NTupleNetwork.load(out);
+            if(tuples != null && !Arrays.deepEquals(tuples, network.getTuples())){
+                throw new IllegalArgumentException(out + " holds a network with other tuples than the ones given, "
+                        + "train them into a new file or leave out --tuples");
+            }
+        }else{
+            network = new NTupleNetwork(tuples != null ? tuples : NTupleNetwork.FOUR_TUPLES);
+        }
+        AtomicInteger nextGame = new AtomicInteger();
+        AtomicLong reportScore = new AtomicLong();
+        AtomicInteger reportWins = new AtomicInteger();
+        Object saveLock = new Object();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            List<Future<?>> workers = new ArrayList<>(threads);
+            for(int t = 0; t < threads; t++){
+                workers.add(pool.submit(() -> {
+                    for(int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()){
+                        GameResult result = playGame(network, game, seed + game);
+                        reportScore.addAndGet(result.score);
+                        if(result.maxTile >= 2048){
+                            reportWins.incrementAndGet();
+                        }
+                        int played = game + 1;
+                        if(played % reportEvery == 0){
+                            System.out.println(String.format(Locale.ROOT, "%d games: mean score %.0f, 2048 rate %.3f",
+                                    played, (double)reportScore.getAndSet(0) / reportEvery,
+                                    (double)reportWins.getAndSet(0) / reportEvery));
+                        }
+                        if(played % saveEvery == 0){
+                            synchronized(saveLock){
+                                network.save(out);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> worker : workers){
+                worker.get();
+            }
+        }finally{
+            pool.shutdownNow();
+        }
+        network.save(out);
+        return network;
+    }
+
+    /**
+     * Plays one game with tiles spawned from the seed, learning after every move
+     */
+    public GameResult playGame(NTupleNetwork network, int game, long gameSeed){
+        TileSpawner spawner = new RandomTileSpawner(gameSeed);
+        long[] moves = new long[4];
+        int[] directions = new int[4];
+        long[] moveNanos = new long[1024];
+        int played = 0;
+        int foursSpawned = 0;
+        long board = spawner.spawn(spawner.spawn(0L));
+        foursSpawned += Long.bitCount(board & 0x2222222222222222L);
+        long previous = 0L;
+        boolean first = true;
+        while(!BitBoard.isTerminal(board)){
+            long start = System.nanoTime();
+            int count = MoveGenerator.generateMoves(board, moves, directions);
+            long best = moves[0];
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for(int i = 0; i < count; i++){
+                double reward = MoveGenerator.score(board, directions[i]);
+                double value = reward + network.value(moves[i]);
+                if(value > bestValue){
+                    best = moves[i];
+                    bestValue = value;
+                }
+            }
+            if(!first){
+                learn(network, previous, bestValue);
+            }
+            first = false;
+            previous = best;
+            if(played == moveNanos.length){
+                moveNanos = Arrays.copyOf(moveNanos, played * 2);
+            }
+            moveNanos[played++] = System.nanoTime() - start;
+
+            board = spawner.spawn(best);
+            if(((board ^ best) & 0x2222222222222222L) != 0){
+                foursSpawned++;
+            }
+        }
+        if(!first){
+            learn(network, previous, 0);
+        }
+        return new GameResult(game, gameSeed, board, foursSpawned, moveNanos, played);
+    }
+
+    private void learn(NTupleNetwork network, long afterstate, double target){
+        network.update(afterstate, (float)(alpha * (target - network.value(afterstate))));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SelfPlay.parse(args);
+        NTupleTrainer trainer = new NTupleTrainer();
+        if(options.containsKey("games")) trainer.games(Integer.parseInt(options.get("games")));
+        if(options.containsKey("threads")) trainer.threads(Integer.parseInt(options.get("threads")));
+        if(options.containsKey("alpha")) trainer.alpha(Float.parseFloat(options.get("alpha")));
+        if(options.containsKey("seed")) trainer.seed(Long.parseLong(options.get("seed")));
+        if(options.containsKey("save-every")) trainer.saveEvery(Integer.parseInt(options.get("save-every")));
+        if(options.containsKey("report-every")) trainer.reportEvery(Integer.parseInt(options.get("report-every")));
+        if(options.containsKey("tuples")) trainer.tuples("6".equals(options.get("tuples")) ? NTupleNetwork.SIX_TUPLES : NTupleNetwork.FOUR_TUPLES);
+        if(options.containsKey("out")) trainer.out(Paths.get(options.get("out")));
+        trainer.run();
+    }
+}
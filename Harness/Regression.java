@@ -0,0 +1,152 @@
+package Harness;
+
+import Search.ExpectiMax;
+import Search.SearchStats;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs ExpectiMax over a position corpus (see Corpus) at fixed depths, reporting how fast it searched and whether
+ * it still picks the same moves, so that "faster" can be told apart from "different" after a change to the engine.
+ *
+ * Every position is decided from an empty cache in reproducible mode (cached values are only reused at exactly
+ * the depth they were searched to), so the moves depend neither on the order of the corpus nor on --threads.
+ * For each depth the harness prints the wall time (including the cache clears), the mean search time per
+ * decision and the nodes searched per second (both from SearchStats), and the agreement with the reference moves:
+ * the board after the move chosen for every position, kept in a long[] file per depth in the --reference
+ * directory. A depth without a reference file yet gets one written from this run; --update-reference true
+ * rewrites them all.
+ *
+ * Usage:
+ *
+ * java -cp selfplay.jar Harness.Regression --corpus corpus.bin --depths 2,4,6 --reference reference
+ *
+ * --threads N searches each decision with N threads.
+ * --min-agreement P exits with status 1 when any depth agrees with its reference on less than P percent of
+ * the positions.
+ */
+public class Regression {
+
+    /**
+     * What one depth cost and how it compared to the reference
+     */
+    public static class Result {
+        public final int depth;
+        public final int positions;
+        public long wallNanos;
+        public long searchNanos;
+        public long nodes;
+        public long cacheHits;
+        public long cacheLookups;
+        public int agreed;
+        public long[] moves;
+
+        Result(int depth, int positions){
+            this.depth = depth;
+            this.positions = positions;
+            this.moves = new long[positions];
+        }
+
+        public double nodesPerSecond(){
+            return searchNanos == 0 ? 0 : nodes * 1e9 / searchNanos;
+        }
+
+        public double agreement(){
+            return positions == 0 ? 100 : 100.0 * agreed / positions;
+        }
+    }
+
+    private int threads = 1;
+    private int cacheMegabytes = 32;
+    private int warmup = 50;
+
+    public Regression threads(int threads){ this.threads = threads; return this; }
+    public Regression cacheMegabytes(int cacheMegabytes){ this.cacheMegabytes = cacheMegabytes; return this; }
+    public Regression warmup(int warmup){ this.warmup = warmup; return this; }
+
+    /**
+     * Decides every position at the given depth
+     *
+     * @param reference the moves to compare with, or null to only time the run
+     */
+    public Result run(long[] corpus, int depth, long[] reference){
+        if(reference != null && reference.length != corpus.length){
+            throw new IllegalArgumentException("The reference has " + reference.length + " moves for " + corpus.length + " positions");
+        }
+        ExpectiMax engine = new ExpectiMax();
+        engine.setDepth(depth);
+        engine.setCacheSize(cacheMegabytes);
+        engine.setParallelism(threads);
+        engine.setReproducible(true);
+
+        for(int i = 0; i < Math.min(warmup, corpus.length); i++){
+            engine.clearCache();
+            engine.decideAction(corpus[i]);
+        }
+
+        Result result = new Result(depth, corpus.length);
+        long start = System.nanoTime();
+        for(int i = 0; i < corpus.length; i++){
+            engine.clearCache();
+            result.moves[i] = engine.decideAction(corpus[i]);
+            SearchStats stats = engine.getLastStats();
+            result.searchNanos += stats.totalNanos;
+            result.nodes += stats.nodes();
+            result.cacheHits += stats.cacheHits;
+            result.cacheLookups += stats.cacheHits + stats.cacheMisses;
+            if(reference != null && reference[i] == result.moves[i]){
+                result.agreed++;
+            }
+        }
+        result.wallNanos = System.nanoTime() - start;
+        engine.setParallelism(1);
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SelfPlay.parse(args);
+        if(!options.containsKey("corpus")){
+            throw new IllegalArgumentException("Usage: --corpus FILE [--depths 2,4,6] [--reference DIR] [--update-reference true] [--threads N] [--cache-mb C] [--warmup N] [--min-agreement P]");
+        }
+        Regression regression = new Regression();
+        if(options.containsKey("threads")) regression.threads(Integer.parseInt(options.get("threads")));
+        if(options.containsKey("cache-mb")) regression.cacheMegabytes(Integer.parseInt(options.get("cache-mb")));
+        if(options.containsKey("warmup")) regression.warmup(Integer.parseInt(options.get("warmup")));
+        Path referenceDir = options.containsKey("reference") ? Paths.get(options.get("reference")) : null;
+        boolean update = Boolean.parseBoolean(options.getOrDefault("update-reference", "false"));
+        double minAgreement = Double.parseDouble(options.getOrDefault("min-agreement", "0"));
+
+        long[] corpus = Corpus.read(Paths.get(options.get("corpus")));
+        System.out.println(corpus.length + " positions");
+        System.out.println("depth,wall_ms,mean_ms,nodes,nodes_per_sec,cache_hit_rate,agreement");
+        boolean failed = false;
+        for(String value : options.getOrDefault("depths", "4").split(",")){
+            int depth = Integer.parseInt(value.trim());
+            Path referenceFile = referenceDir == null ? null : referenceDir.resolve("moves-d" + depth + ".bin");
+            boolean compare = referenceFile != null && !update && Files.exists(referenceFile);
+            Result result = regression.run(corpus, depth, compare ? Corpus.read(referenceFile) : null);
+
+            String agreement = "-";
+            if(compare){
+                agreement = String.format(Locale.ROOT, "%.2f%%", result.agreement());
+                failed |= result.agreement() < minAgreement;
+            }else if(referenceFile != null){
+                Files.createDirectories(referenceDir);
+                Corpus.write(referenceFile, result.moves);
+                agreement = "recorded";
+            }
+            System.out.println(String.format(Locale.ROOT, "%d,%.1f,%.3f,%d,%.0f,%.3f,%s", depth,
+                    result.wallNanos / 1e6, result.searchNanos / 1e6 / Math.max(1, corpus.length), result.nodes,
+                    result.nodesPerSecond(), result.cacheLookups == 0 ? 0 : (double)result.cacheHits / result.cacheLookups,
+                    agreement));
+        }
+        if(failed){
+            System.out.println("Agreement below " + minAgreement + "%");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package Harness;
+
+import Environment.BitBoard;
+import Environment.HeuristicWeights;
+import Search.ExpectiMax;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs recorded positions from a GameRecorder trace through ExpectiMax again, to reproduce and inspect decisions.
+ *
+ * With --move the engine decides that single position from an empty cache, printing the board, the recorded and
+ * the replayed direction and the SearchStats of the decision. Without it every move of the game is replayed in
+ * order with one engine, the way SelfPlay played it, and the moves that differ from the recording are printed.
+ * Without --game every game in the trace is replayed.
+ *
+ * Usage:
+ *
+ * java -cp selfplay.jar Harness.Replay --trace games.trace --game 3 --move 120 --depth 6
+ *
+ * --depth, --time-ms, --cache-mb and --weights take the same values as in SelfPlay, and should match the
+ * recording run for the replayed moves to agree with it.
+ */
+public class Replay {
+
+    private static final String[] DIRECTIONS = {"left", "right", "up", "down"};
+
+    /**
+     * Replays every move of a game with one engine
+     *
+     * @return the number of moves the engine decided differently from the recording
+     */
+    public static int replayGame(SelfPlay settings, GameTrace trace, boolean verbose){
+        ExpectiMax engine = settings.engine();
+        int different = 0;
+        for(int i = 0; i < trace.moves(); i++){
+            int direction = GameTrace.direction(trace.board(i), settings.decide(engine, trace.board(i)));
+            if(direction != trace.direction(i)){
+                different++;
+                if(verbose){
+                    System.out.println(String.format(Locale.ROOT, "Game %d move %d: %016x recorded %s, replayed %s",
+                            trace.game, i, trace.board(i), DIRECTIONS[trace.direction(i)], name(direction)));
+                }
+            }
+        }
+        return different;
+    }
+
+    /**
+     * Decides a single recorded position with a new engine and prints what it did
+     */
+    public static void replayMove(SelfPlay settings, GameTrace trace, int move){
+        if(move < 0 || move >= trace.moves()){
+            throw new IllegalArgumentException("Game " + trace.game + " has moves 0 to " + (trace.moves() - 1) + ", got " + move);
+        }
+        ExpectiMax engine = settings.engine();
+        long board = trace.board(move);
+        int direction = GameTrace.direction(board, settings.decide(engine, board));
+        BitBoard.printBoard(board);
+        System.out.println(String.format(Locale.ROOT, "Game %d move %d: %016x recorded %s, replayed %s",
+                trace.game, move, board, DIRECTIONS[trace.direction(move)], name(direction)));
+        System.out.println(engine.getLastStats());
+    }
+
+    private static String name(int direction){
+        return direction < 0 ? "none" : DIRECTIONS[direction];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SelfPlay.parse(args);
+        if(!options.containsKey("trace")){
+            throw new IllegalArgumentException("Usage: --trace FILE [--game N] [--move M] [--depth D] [--time-ms T] [--cache-mb C] [--weights FILE]");
+        }
+        SelfPlay settings = new SelfPlay().verbose(false);
+        if(options.containsKey("depth")) settings.depth(Integer.parseInt(options.get("depth")));
+        if(options.containsKey("time-ms")) settings.timeMillis(Long.parseLong(options.get("time-ms")));
+        if(options.containsKey("cache-mb")) settings.cacheMegabytes(Integer.parseInt(options.get("cache-mb")));
+        if(options.containsKey("weights")) settings.weights(HeuristicWeights.load(Paths.get(options.get("weights"))));
+
+        List<GameTrace> traces = GameRecorder.read(Paths.get(options.get("trace")));
+        int moves = 0, different = 0, games = 0;
+        for(GameTrace trace : traces){
+            if(options.containsKey("game") && trace.game != Integer.parseInt(options.get("game"))){
+                continue;
+            }
+            games++;
+            if(options.containsKey("move")){
+                replayMove(settings, trace, Integer.parseInt(options.get("move")));
+                continue;
+            }
+            moves += trace.moves();
+            different += replayGame(settings, trace, true);
+        }
+        if(games == 0){
+            System.out.println("No matching game among the " + traces.size() + " in the trace");
+        }else if(!options.containsKey("move")){
+            System.out.println(String.format(Locale.ROOT, "%d games, %d moves, %d replayed differently (%.2f%% agreement)",
+                    games, moves, different, moves == 0 ? 100.0 : 100.0 * (moves - different) / moves));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package Harness;
+
+import Environment.BitBoard;
+import Environment.HeuristicWeights;
+import Environment.RandomTileSpawner;
+import Environment.TileSpawner;
+import Search.ExpectiMax;
+import Search.TableEvaluator;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a batch of ExpectiMax games in parallel and writes per-game results and a summary.
+ *
+ * Every pool thread keeps one engine, cleared with newGame before each of its games, and every game gets its
+ * own RandomTileSpawner seeded with seed + game number, so any single game can be replayed by running it again
+ * with the same settings.
+ *
+ * Usage:
+ *
+ * java -jar selfplay.jar --games 1000 --threads 8 --depth 6 --seed 1 --csv games.csv --json summary.json
+ *
+ * --time-ms N searches each move with iterative deepening for N milliseconds instead of a fixed depth
+ * (the depth is then the maximum depth). --weights FILE plays with a weight set read by HeuristicWeights.load
+ * instead of the default one. --trace FILE appends every game to a GameRecorder trace file, see Replay.
+ */
+public class SelfPlay {
+
+    private int games = 10;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int depth = 6;
+    private long seed = 1L;
+    private long timeMillis = 0L;
+    private int cacheMegabytes = 32;
+    private HeuristicWeights weights = HeuristicWeights.DEFAULT;
+    private boolean verbose = true;
+    private GameRecorder recorder = null;
+    private final ThreadLocal<ExpectiMax> engines = ThreadLocal.withInitial(this::engine);
+
+    public SelfPlay games(int games){ this.games = games; return this; }
+    public SelfPlay threads(int threads){ this.threads = threads; return this; }
+    public SelfPlay depth(int depth){ this.depth = depth; return this; }
+    public SelfPlay seed(long seed){ this.seed = seed; return this; }
+    public SelfPlay timeMillis(long timeMillis){ this.timeMillis = timeMillis; return this; }
+    public SelfPlay cacheMegabytes(int cacheMegabytes){ this.cacheMegabytes = cacheMegabytes; return this; }
+    public SelfPlay weights(HeuristicWeights weights){ this.weights = weights; return this; }
+    public SelfPlay verbose(boolean verbose){ this.verbose = verbose; return this; }
+    public SelfPlay recorder(GameRecorder recorder){ this.recorder = recorder; return this; }
+
+    /**
+     * Plays all games and waits for them to finish
+     *
+     * @return the results in game order
+     */
+    public List<GameResult> run() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            List<Future<GameResult>> futures = new ArrayList<>(games);
+            for(int i = 0; i < games; i++){
+                final int game = i;
+                futures.add(pool.submit(() -> playGame(game, seed + game)));
+            }
+            List<GameResult> results = new ArrayList<>(games);
+            for(Future<GameResult> future : futures){
+                results.add(future.get());
+            }
+            return results;
+        }finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return an engine with the depth, cache size and weights games are played with
+     */
+    public ExpectiMax engine(){
+        ExpectiMax engine = new ExpectiMax();
+        engine.setDepth(depth);
+        engine.setCacheSize(cacheMegabytes);
+        engine.setEvaluator(TableEvaluator.forWeights(weights));
+        return engine;
+    }
+
+    /**
+     * Decides one move the way games are played, at a fixed depth or within the time budget
+     */
+    public long decide(ExpectiMax engine, long board){
+        return timeMillis > 0 ? engine.decideAction(board, timeMillis) : engine.decideAction(board);
+    }
+
+    /**
+     * Plays a game with the calling thread's engine
+     */
+    public GameResult playGame(int game, long gameSeed) throws IOException {
+        ExpectiMax engine = engines.get();
+        engine.newGame();
+        return playGame(engine, game, gameSeed);
+    }
+
+    /**
+     * Plays a game with the given engine, which should start with an empty cache (a new engine, or one after newGame)
+     */
+    public GameResult playGame(ExpectiMax engine, int game, long gameSeed) throws IOException {
+        TileSpawner spawner = new RandomTileSpawner(gameSeed);
+
+        long[] moveNanos = new long[1024];
+        int moves = 0;
+        int foursSpawned = 0;
+        long board = spawner.spawn(spawner.spawn(0L));
+        foursSpawned += Long.bitCount(board & 0x2222222222222222L);
+        GameTrace.Builder trace = recorder != null ? new GameTrace.Builder(game, gameSeed, board) : null;
+        while(!BitBoard.isTerminal(board)){
+            long start = System.nanoTime();
+            long next = decide(engine, board);
+            long elapsed = System.nanoTime() - start;
+            if(moves == moveNanos.length){
+                moveNanos = Arrays.copyOf(moveNanos, moves * 2);
+            }
+            moveNanos[moves++] = elapsed;
+
+            board = spawner.spawn(next);
+            if(((board ^ next) & 0x2222222222222222L) != 0){
+                foursSpawned++;
+            }
+            if(trace != null){
+                trace.add(next, board);
+            }
+        }
+        if(trace != null){
+            recorder.record(trace.build());
+        }
+        GameResult result = new GameResult(game, gameSeed, board, foursSpawned, moveNanos, moves);
+        if(verbose) System.out.println(String.format(Locale.ROOT, "Game %d: max tile %d, score %d, %d moves, %.1f ms/move",
+                game, result.maxTile, result.score, result.moves, result.totalNanos() / 1e6 / Math.max(1, result.moves)));
+        return result;
+    }
+
+    public String describe(){
+        return "{\"threads\": " + threads + ", \"depth\": " + depth + ", \"seed\": " + seed
+                + ", \"time_ms\": " + timeMillis + ", \"cache_mb\": " + cacheMegabytes + ", \"weights\": " + weightsJson() + "}";
+    }
+
+    private String weightsJson(){
+        StringBuilder json = new StringBuilder("{");
+        double[] values = weights.toArray();
+        for(int i = 0; i < values.length; i++){
+            json.append(i == 0 ? "" : ", ").append('"').append(HeuristicWeights.NAMES[i]).append("\": ").append(values[i]);
+        }
+        return json.append('}').toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        SelfPlay selfPlay = new SelfPlay();
+        if(options.containsKey("games")) selfPlay.games(Integer.parseInt(options.get("games")));
+        if(options.containsKey("threads")) selfPlay.threads(Integer.parseInt(options.get("threads")));
+        if(options.containsKey("depth")) selfPlay.depth(Integer.parseInt(options.get("depth")));
+        if(options.containsKey("seed")) selfPlay.seed(Long.parseLong(options.get("seed")));
+        if(options.containsKey("time-ms")) selfPlay.timeMillis(Long.parseLong(options.get("time-ms")));
+        if(options.containsKey("cache-mb")) selfPlay.cacheMegabytes(Integer.parseInt(options.get("cache-mb")));
+        if(options.containsKey("weights")) selfPlay.weights(HeuristicWeights.load(Paths.get(options.get("weights"))));
+
+        long start = System.nanoTime();
+        List<GameResult> results;
+        if(options.containsKey("trace")){
+            try(GameRecorder recorder = new GameRecorder(Paths.get(options.get("trace")))){
+                results = selfPlay.recorder(recorder).run();
+            }
+        }else{
+            results = selfPlay.run();
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        if(options.containsKey("csv")){
+            Statistics.writeCsv(Paths.get(options.get("csv")), results);
+        }
+        if(options.containsKey("json")){
+            Statistics.writeJson(Paths.get(options.get("json")), results, selfPlay.describe(), wallNanos);
+        }
+        System.out.print(Statistics.summary(results, selfPlay.describe(), wallNanos));
+    }
+
+    /**
+     * Parses "--name value" pairs
+     */
+    static Map<String, String> parse(String[] args){
+        Map<String, String> options = new HashMap<>();
+        for(int i = 0; i < args.length; i++){
+            if(!args[i].startsWith("--") || i + 1 >= args.length){
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
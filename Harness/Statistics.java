@@ -0,0 +1,129 @@
+package Harness;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Summaries of a batch of self-play games, written as a per-game CSV and a JSON summary.
+ */
+public class Statistics {
+
+    public static final int[] MILESTONES = {512, 1024, 2048, 4096, 8192, 16384, 32768};
+
+    /**
+     * Nearest rank percentile of sorted values
+     *
+     * @param sorted values in ascending order
+     * @param percentile between 0 and 100
+     */
+    public static long percentile(long[] sorted, double percentile){
+        if(sorted.length == 0){
+            return 0;
+        }
+        int rank = (int)Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    public static double mean(long[] values){
+        if(values.length == 0){
+            return 0;
+        }
+        double sum = 0;
+        for(long value : values){
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    public static void writeCsv(Path path, List<GameResult> results) throws IOException {
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))){
+            out.println("game,seed,max_tile,score,moves,final_board,mean_ms,p50_ms,p99_ms,max_ms");
+            for(GameResult result : results){
+                long[] sorted = result.moveNanos.clone();
+                Arrays.sort(sorted);
+                out.println(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%016x,%.3f,%.3f,%.3f,%.3f",
+                        result.game, result.seed, result.maxTile, result.score, result.moves, result.finalBoard,
+                        millis(mean(sorted)), millis(percentile(sorted, 50)), millis(percentile(sorted, 99)),
+                        millis(percentile(sorted, 100))));
+            }
+        }
+    }
+
+    /**
+     * Writes the summary of all games: how often each milestone tile was reached,
+     * and percentiles of the scores, game lengths and move latencies.
+     */
+    public static void writeJson(Path path, List<GameResult> results, String config, long wallNanos) throws IOException {
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))){
+            out.print(summary(results, config, wallNanos));
+        }
+    }
+
+    public static String summary(List<GameResult> results, String config, long wallNanos){
+        int games = results.size();
+        long[] scores = new long[games];
+        long[] lengths = new long[games];
+        int totalMoves = 0;
+        for(int i = 0; i < games; i++){
+            scores[i] = results.get(i).score;
+            lengths[i] = results.get(i).moves;
+            totalMoves += results.get(i).moves;
+        }
+        long[] latencies = new long[totalMoves];
+        int next = 0;
+        for(GameResult result : results){
+            System.arraycopy(result.moveNanos, 0, latencies, next, result.moves);
+            next += result.moves;
+        }
+        Arrays.sort(scores);
+        Arrays.sort(lengths);
+        Arrays.sort(latencies);
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"config\": ").append(config).append(",\n");
+        json.append("  \"games\": ").append(games).append(",\n");
+        json.append("  \"wall_seconds\": ").append(format(wallNanos / 1e9)).append(",\n");
+        json.append("  \"max_tile\": {");
+        for(int i = 0; i < MILESTONES.length; i++){
+            int reached = 0;
+            for(GameResult result : results){
+                if(result.maxTile >= MILESTONES[i]){
+                    reached++;
+                }
+            }
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    \"").append(MILESTONES[i]).append("\": {\"games\": ").append(reached)
+                    .append(", \"rate\": ").append(format(games == 0 ? 0 : (double)reached / games)).append("}");
+        }
+        json.append("\n  },\n");
+        json.append("  \"score\": ").append(distribution(scores, 1)).append(",\n");
+        json.append("  \"moves\": ").append(distribution(lengths, 1)).append(",\n");
+        json.append("  \"move_ms\": ").append(distribution(latencies, 1e6)).append("\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static String distribution(long[] sorted, double scale){
+        return "{\"mean\": " + format(mean(sorted) / scale)
+                + ", \"p50\": " + format(percentile(sorted, 50) / scale)
+                + ", \"p90\": " + format(percentile(sorted, 90) / scale)
+                + ", \"p99\": " + format(percentile(sorted, 99) / scale)
+                + ", \"p999\": " + format(percentile(sorted, 99.9) / scale)
+                + ", \"max\": " + format(percentile(sorted, 100) / scale) + "}";
+    }
+
+    private static double millis(double nanos){
+        return nanos / 1e6;
+    }
+
+    private static String format(double value){
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,252 @@
+package Harness;
+
+import Environment.AtomicFile;
+import Environment.HeuristicWeights;
+import Environment.TableFile;
+import Environment.TableGenerator;
+import Search.ExpectiMax;
+import Search.TableEvaluator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the heuristic weights offline by playing shallow self-play games.
+ *
+ * The search is a cross-entropy method over the weight vector (HeuristicWeights.NAMES): every generation
+ * samples a population of weight sets from a normal distribution around the current mean, plays the same
+ * games (same tile seeds) with each of them, and moves the mean and spread to those of the best few.
+ * Candidates are scored by their mean game score. Every game of every candidate is played in one thread pool,
+ * each pool thread keeps one engine and gives it the candidate's evaluator (which empties its cache) before every game.
+ *
+ * The state is checkpointed to a properties file after every generation, rerunning with the same checkpoint
+ * continues where the last run stopped. Every generation also plays its games with the best weight set so far, which
+ * is replaced only when a candidate scores more on the same games, so luckier tile seeds in a later generation
+ * never decide which weights are kept. The best weight set is written after every generation too,
+ * and when all generations are done its heuristic table is written in the TableFile format, ready for -Dbitboard.tables.
+ * The table file carries the weights, so a JVM started with it shares the table with engines using
+ * TableEvaluator.forWeights of the best weights, and still builds the default table for the default weights.
+ *
+ * Usage:
+ *
+ * java -cp selfplay.jar Harness.Tuner --generations 30 --population 16 --elite 4 --games 40 --depth 2
+ *     --threads 8 --seed 1 --checkpoint tuner.properties --weights-out best.properties --tables-out best.tables
+ *
+ * --start FILE starts from a weight set read by HeuristicWeights.load instead of the defaults.
+ */
+public class Tuner {
+
+    /**
+     * Starting spread of each weight, in the order of HeuristicWeights.NAMES. The spread never shrinks below
+     * a tenth of this, so the search keeps exploring.
+     */
+    private static final double[] INITIAL_SIGMA = {500, 750, 12500, 2500, 20, 0.5, 250};
+    private static final double MIN_POWER = 1, MAX_POWER = 8;
+
+    private int generations = 30;
+    private int population = 16;
+    private int elite = 4;
+    private int games = 40;
+    private int depth = 2;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1L;
+    private Path checkpoint = Paths.get("tuner.properties");
+    private Path weightsOut = Paths.get("best.properties");
+    private Path tablesOut = null;
+
+    private int generation = 0;
+    private double[] mean = HeuristicWeights.DEFAULT.toArray();
+    private double[] sigma = INITIAL_SIGMA.clone();
+    private double[] best = null;
+    private double bestFitness = Double.NEGATIVE_INFINITY;
+    private final ThreadLocal<ExpectiMax> engines = ThreadLocal.withInitial(() -> new SelfPlay().depth(depth).engine());
+
+    public Tuner generations(int generations){ this.generations = generations; return this; }
+    public Tuner population(int population){ this.population = population; return this; }
+    public Tuner elite(int elite){ this.elite = elite; return this; }
+    public Tuner games(int games){ this.games = games; return this; }
+    public Tuner depth(int depth){ this.depth = depth; return this; }
+    public Tuner threads(int threads){ this.threads = threads; return this; }
+    public Tuner seed(long seed){ this.seed = seed; return this; }
+    public Tuner checkpoint(Path checkpoint){ this.checkpoint = checkpoint; return this; }
+    public Tuner weightsOut(Path weightsOut){ this.weightsOut = weightsOut; return this; }
+    public Tuner tablesOut(Path tablesOut){ this.tablesOut = tablesOut; return this; }
+    public Tuner start(HeuristicWeights weights){ this.mean = weights.toArray(); return this; }
+
+    /**
+     * Runs the remaining generations, resuming from the checkpoint if there is one
+     *
+     * @return the best weight set found
+     */
+    public HeuristicWeights run() throws Exception {
+        if(Files.exists(checkpoint)){
+            load();
+            System.out.println("Resuming at generation " + generation + " from " + checkpoint);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            for(; generation < generations; generation++){
+                step(pool);
+                generationDone();
+            }
+        }finally{
+            pool.shutdownNow();
+        }
+        HeuristicWeights result = HeuristicWeights.fromArray(best != null ? best : mean);
+        if(tablesOut != null){
+            TableFile.write(tablesOut, TableGenerator.enumerateMoves(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Plays one generation and moves the distribution towards its best candidates. The best weight set so far plays
+     * the same games as the candidates, without taking part in the update, and stays the best unless one beats it.
+     */
+    private void step(ExecutorService pool) throws Exception {
+        Random rng = new Random(seed * 1000003L + generation);
+        int scored = best != null ? population + 1 : population;
+        double[][] candidates = new double[scored][];
+        candidates[0] = mean.clone();
+        for(int i = 1; i < population; i++){
+            candidates[i] = new double[mean.length];
+            for(int w = 0; w < mean.length; w++){
+                candidates[i][w] = mean[w] + sigma[w] * rng.nextGaussian();
+            }
+        }
+        if(best != null){
+            candidates[population] = best.clone();
+        }
+        for(double[] candidate : candidates){
+            candidate[5] = Math.max(MIN_POWER, Math.min(MAX_POWER, candidate[5]));
+        }
+
+        long gameSeed = seed + (long)generation * games;
+        List<List<Future<GameResult>>> results = new ArrayList<>(scored);
+        SelfPlay selfPlay = new SelfPlay().depth(depth).verbose(false);
+        for(double[] candidate : candidates){
+            HeuristicWeights weights = HeuristicWeights.fromArray(candidate);
+            List<Future<GameResult>> futures = new ArrayList<>(games);
+            for(int g = 0; g < games; g++){
+                final int game = g;
+                futures.add(pool.submit(() -> {
+                    ExpectiMax engine = engines.get();
+                    engine.setEvaluator(TableEvaluator.forWeights(weights));
+                    return selfPlay.playGame(engine, game, gameSeed + game);
+                }));
+            }
+            results.add(futures);
+        }
+        double[] fitness = new double[scored];
+        for(int i = 0; i < scored; i++){
+            long total = 0;
+            for(Future<GameResult> future : results.get(i)){
+                total += future.get().score;
+            }
+            fitness[i] = (double)total / games;
+            TableEvaluator.release(HeuristicWeights.fromArray(candidates[i]));
+        }
+
+        Integer[] order = new Integer[population];
+        for(int i = 0; i < population; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+        double incumbent = best != null ? fitness[population] : Double.NEGATIVE_INFINITY;
+        if(fitness[order[0]] > incumbent){
+            bestFitness = fitness[order[0]];
+            best = candidates[order[0]].clone();
+        }else{
+            bestFitness = incumbent;
+        }
+
+        int top = Math.min(elite, population);
+        for(int w = 0; w < mean.length; w++){
+            double sum = 0;
+            for(int i = 0; i < top; i++){
+                sum += candidates[order[i]][w];
+            }
+            double eliteMean = sum / top;
+            double variance = 0;
+            for(int i = 0; i < top; i++){
+                variance += (candidates[order[i]][w] - eliteMean) * (candidates[order[i]][w] - eliteMean);
+            }
+            mean[w] = eliteMean;
+            sigma[w] = Math.max(INITIAL_SIGMA[w] / 10, (sigma[w] + Math.sqrt(variance / top)) / 2);
+        }
+        System.out.println(String.format(Locale.ROOT, "Generation %d: best %.1f, mean candidate %.1f, best so far %.1f",
+                generation, fitness[order[0]], fitness[0], bestFitness));
+    }
+
+    /**
+     * Writes the checkpoint and the best weights, each to a temporary file that is then moved over the old one,
+     * so a run killed halfway through a write leaves the previous checkpoint intact
+     */
+    private void generationDone() throws IOException {
+        Properties state = new Properties();
+        state.setProperty("generation", Integer.toString(generation + 1));
+        state.setProperty("seed", Long.toString(seed));
+        state.setProperty("bestFitness", Double.toString(bestFitness));
+        for(int w = 0; w < mean.length; w++){
+            state.setProperty("mean." + HeuristicWeights.NAMES[w], Double.toString(mean[w]));
+            state.setProperty("sigma." + HeuristicWeights.NAMES[w], Double.toString(sigma[w]));
+            state.setProperty("best." + HeuristicWeights.NAMES[w], Double.toString(best[w]));
+        }
+        AtomicFile.write(checkpoint, temporary -> {
+            try(Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)){
+                state.store(out, "Tuner checkpoint");
+            }
+        });
+        AtomicFile.write(weightsOut, HeuristicWeights.fromArray(best)::store);
+    }
+
+    private void load() throws IOException {
+        Properties state = new Properties();
+        try(Reader in = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)){
+            state.load(in);
+        }
+        generation = Integer.parseInt(state.getProperty("generation"));
+        seed = Long.parseLong(state.getProperty("seed"));
+        bestFitness = Double.parseDouble(state.getProperty("bestFitness"));
+        best = new double[mean.length];
+        for(int w = 0; w < mean.length; w++){
+            mean[w] = Double.parseDouble(state.getProperty("mean." + HeuristicWeights.NAMES[w]));
+            sigma[w] = Double.parseDouble(state.getProperty("sigma." + HeuristicWeights.NAMES[w]));
+            best[w] = Double.parseDouble(state.getProperty("best." + HeuristicWeights.NAMES[w]));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SelfPlay.parse(args);
+        Tuner tuner = new Tuner();
+        if(options.containsKey("generations")) tuner.generations(Integer.parseInt(options.get("generations")));
+        if(options.containsKey("population")) tuner.population(Integer.parseInt(options.get("population")));
+        if(options.containsKey("elite")) tuner.elite(Integer.parseInt(options.get("elite")));
+        if(options.containsKey("games")) tuner.games(Integer.parseInt(options.get("games")));
+        if(options.containsKey("depth")) tuner.depth(Integer.parseInt(options.get("depth")));
+        if(options.containsKey("threads")) tuner.threads(Integer.parseInt(options.get("threads")));
+        if(options.containsKey("seed")) tuner.seed(Long.parseLong(options.get("seed")));
+        if(options.containsKey("checkpoint")) tuner.checkpoint(Paths.get(options.get("checkpoint")));
+        if(options.containsKey("weights-out")) tuner.weightsOut(Paths.get(options.get("weights-out")));
+        if(options.containsKey("tables-out")) tuner.tablesOut(Paths.get(options.get("tables-out")));
+        if(options.containsKey("start")) tuner.start(HeuristicWeights.load(Paths.get(options.get("start"))));
+
+        HeuristicWeights best = tuner.run();
+        System.out.print(best);
+    }
+}
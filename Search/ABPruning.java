@@ -2,89 +2,331 @@ package Search;
 
 import Environment.BitBoard;
 
-import java.util.List;
-
 /**
  * Created by Rob on 12/12/2016.
+ *
+ * Alpha beta search that treats the tile placement as an adversary placing the worst possible tile.
+ * Depth counts plies: a player move and a tile placement are one ply each.
+ *
+ * decideAction searches with iterative deepening, depth 1, 2, 3 ... up to MAX_DEPTH, ordering the root moves
+ * by the values of the previous iteration. Inside the tree player moves are tried best first and tile placements
+ * worst first, both by their static evaluation. Max nodes are cached in two transposition tables holding a lower
+ * and an upper bound of their value (equal when the value is exact), keyed on the board and the remaining plies.
  */
 public class ABPruning {
 
     private int MAX_DEPTH = 8;
     private long TILE_TWO = 0x1L;
 
+    /**
+     * Bounds of searched max nodes. An exact value is stored in both tables.
+     */
+    private int CACHE_MEGABYTES = 16;
+    private TranspositionTable LOWER = new TranspositionTable(CACHE_MEGABYTES);
+    private TranspositionTable UPPER = new TranspositionTable(CACHE_MEGABYTES);
+
+    private Evaluator EVALUATOR = TableEvaluator.DEFAULT;
+
+    /**
+     * One move and score buffer per depth, so generating and ordering children does not allocate while searching.
+     * A tile placement node has at most 30 children (a 2 or a 4 on each of 15 empty tiles).
+     */
+    private long[][] moveBuffers = new long[MAX_DEPTH + 1][32];
+    private double[][] scoreBuffers = new double[MAX_DEPTH + 1][32];
+
+    /**
+     * Nodes visited since the last resetNodes
+     */
+    private long NODES = 0;
+
+    /**
+     * Deadline of the time bounded search, 0 when there is none. The clock is read every 1024 max and min nodes
+     * that are not leaves, counted by CLOCK_TICKS.
+     */
+    private long DEADLINE = 0L;
+    private int CLOCK_TICKS = 0;
+    private int COMPLETED_DEPTH = 0;
+
+    /**
+     * Node counts of the running decision (tile placements count as chance nodes), what the last one cost,
+     * and the totals over every decision
+     */
+    private final SearchStats.Counters COUNTERS = new SearchStats.Counters();
+    private final SearchMetrics METRICS = new SearchMetrics();
+    private SearchStats LAST_STATS = null;
+    private long CACHE_HITS_START = 0;
+    private long CACHE_MISSES_START = 0;
+
     public long decideAction(long board){
-        long result = 0;
-        double maxValue = -1.0D / 0.0;
+        long[] actions = new long[4];
+        double[] values = new double[4];
+        int count = MoveGenerator.generateMoves(board, actions);
+        long result = count > 0 ? actions[0] : 0L;
+        int maxDepth = MAX_DEPTH;
+        SearchStats.Timer timer = startDecision();
+        try{
+            for(int depth = 1; depth <= maxDepth; depth++){
+                MAX_DEPTH = depth;
+                result = searchRoot(actions, values, count);
+                COMPLETED_DEPTH = depth;
+                timer.iterationDone();
+                sortDescending(actions, values, count);
+            }
+        }finally{
+            MAX_DEPTH = maxDepth;
+            finishDecision(timer);
+        }
+        return result;
+    }
+
+    /**
+     * Decides within a time budget, returning the move of the deepest iteration that finished in time.
+     * The first iteration always finishes, so there is always a move.
+     */
+    public long decideAction(long board, long timeBudgetMillis){
+        long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+        long[] actions = new long[4];
+        double[] values = new double[4];
+        int count = MoveGenerator.generateMoves(board, actions);
+        long result = count > 0 ? actions[0] : 0L;
+        int maxDepth = MAX_DEPTH;
+        COMPLETED_DEPTH = 0;
+        SearchStats.Timer timer = startDecision();
+        try{
+            for(int depth = 1; depth <= maxDepth; depth++){
+                MAX_DEPTH = depth;
+                result = searchRoot(actions, values, count);
+                COMPLETED_DEPTH = depth;
+                timer.iterationDone();
+                sortDescending(actions, values, count);
+                if(System.nanoTime() >= deadline){
+                    break;
+                }
+                DEADLINE = deadline;
+            }
+        }catch(SearchTimeout e){
+            // The last iteration ran out of time, keep the move of the one before it
+            timer.iterationDone();
+        }finally{
+            MAX_DEPTH = maxDepth;
+            DEADLINE = 0L;
+            finishDecision(timer);
+        }
+        return result;
+    }
 
-        List<Long> actions = MoveGenerator.generateMoves(board);
+    private SearchStats.Timer startDecision(){
+        COUNTERS.reset();
+        CACHE_HITS_START = LOWER.getHits() + UPPER.getHits();
+        CACHE_MISSES_START = LOWER.getMisses() + UPPER.getMisses();
+        return new SearchStats.Timer();
+    }
+
+    private void finishDecision(SearchStats.Timer timer){
+        SearchStats stats = new SearchStats(COUNTERS, LOWER.getHits() + UPPER.getHits() - CACHE_HITS_START,
+                LOWER.getMisses() + UPPER.getMisses() - CACHE_MISSES_START, COMPLETED_DEPTH, timer.iterations(), timer.total());
+        METRICS.record(stats);
+        LAST_STATS = stats;
+    }
 
-        for(long action : actions){
-            double resultValue = this.minValue(action, -1.0D / 0.0, 1.0D / 0.0, 0);
-            if(resultValue > maxValue){
-                System.out.println("yes");
-                result = action;
-                maxValue = resultValue;
+    /**
+     * Searches every root move to MAX_DEPTH, writing their values
+     *
+     * @return the best move
+     */
+    private long searchRoot(long[] actions, double[] values, int count){
+        long result = 0L;
+        double alpha = -1.0D / 0.0;
+        for(int i = 0; i < count; i++){
+            values[i] = this.minValue(actions[i], alpha, 1.0D / 0.0, 0);
+            if(values[i] > alpha || result == 0L){
+                result = actions[i];
+                alpha = Math.max(alpha, values[i]);
             }
         }
         return result;
     }
 
     public double maxValue(long boardState, double alpha, double beta, int depth){
+        NODES++;
         if(BitBoard.isTerminal(boardState)){
+            COUNTERS.leafNodes++;
             return 0.0;
         }
-        if(depth == MAX_DEPTH){
-            return Evaluator.evaluateBoard(boardState);
+        if(depth >= MAX_DEPTH){
+            COUNTERS.leafNodes++;
+            return EVALUATOR.evaluate(boardState);
         }
+        checkDeadline();
+        COUNTERS.maxNodes++;
 
-        double value = -1.0D / 0.0;
+        int remaining = MAX_DEPTH - depth;
+        double lower = LOWER.get(boardState, remaining, 1f);
+        double upper = UPPER.get(boardState, remaining, 1f);
+        if(!Double.isNaN(lower)){
+            if(lower >= beta || lower == upper){
+                return lower;
+            }
+            alpha = Math.max(alpha, lower);
+        }
+        if(!Double.isNaN(upper)){
+            if(upper <= alpha){
+                return upper;
+            }
+            beta = Math.min(beta, upper);
+        }
+        double alphaOriginal = alpha;
 
-        for(long action : MoveGenerator.generateMoves(boardState)){
-            alpha = Math.max(alpha, value);
-            value = Math.max(value, this.minValue(action, alpha, beta, depth + 1));
+        long[] actions = moveBuffers[depth];
+        int count = MoveGenerator.generateMoves(boardState, actions);
+        if(remaining > 1){
+            order(actions, scoreBuffers[depth], count, true);
+        }
+        double value = -1.0D / 0.0;
+        for(int i = 0; i < count; i++){
+            value = Math.max(value, this.minValue(actions[i], alpha, beta, depth + 1));
             if(value >= beta){
-                return value;
+                break;
             }
-
+            alpha = Math.max(alpha, value);
         }
 
+        if(value > alphaOriginal){
+            LOWER.put(boardState, remaining, 1f, value);
+        }
+        if(value < beta){
+            UPPER.put(boardState, remaining, 1f, value);
+        }
         return value;
-
     }
 
-
     public double minValue(long boardState, double alpha, double beta, int depth){
+        NODES++;
         if(BitBoard.isTerminal(boardState)){
+            COUNTERS.leafNodes++;
             return 0.0;
         }
-        double value = 1.0D / 0.0;
+        if(depth >= MAX_DEPTH){
+            COUNTERS.leafNodes++;
+            return EVALUATOR.evaluate(boardState);
+        }
+        checkDeadline();
+        COUNTERS.chanceNodes++;
 
-        if(depth == MAX_DEPTH){
-            return Evaluator.evaluateBoard(boardState);
+        long[] placements = moveBuffers[depth];
+        int count = 0;
+        for( long empty = BitBoard.emptyMask(boardState); empty != 0; empty &= empty - 1 ) {
+            int shift = Long.numberOfTrailingZeros(empty);
+            placements[count++] = boardState | (   TILE_TWO        << shift );
+            placements[count++] = boardState | ( ( TILE_TWO << 1 ) << shift );
         }
-        long mask = 0x000000000000000FL;
-        for( int i = 0; i < 16; i++ ) {
-            if( ( mask & boardState ) == 0 ) {
-                value = Math.min(value, maxValue( (boardState | (   TILE_TWO        << ( i * 4 ) ) ), alpha, beta, depth + 1) );
-                value = Math.min(value, maxValue( (boardState | ( ( TILE_TWO << 1 ) << ( i * 4 ) ) ), alpha, beta, depth + 1) );
-            }
+        if(MAX_DEPTH - depth > 1){
+            order(placements, scoreBuffers[depth], count, false);
+        }
+
+        double value = 1.0D / 0.0;
+        for(int i = 0; i < count; i++){
+            value = Math.min(value, maxValue(placements[i], alpha, beta, depth + 1));
             if(value <= alpha){
-                return value;
+                break;
             }
-            mask = mask << 4;
+            beta = Math.min(beta, value);
         }
+        return value;
+    }
 
+    /**
+     * Sorts the children by their static evaluation, best first for the player or worst first for the tile placement
+     */
+    private void order(long[] children, double[] scores, int count, boolean bestFirst){
+        for(int i = 0; i < count; i++){
+            double score = EVALUATOR.evaluate(children[i]);
+            scores[i] = bestFirst ? score : -score;
+        }
+        sortDescending(children, scores, count);
+    }
 
-        for(long action : MoveGenerator.generateMoves(boardState)){
-            beta = Math.min(beta, value);
-            value = Math.min(value, this.maxValue(action, alpha, beta, depth + 1));
-            if(value <= alpha){
-                return value;
+    /**
+     * Insertion sort of the children by descending score, children has at most 30 entries
+     */
+    private static void sortDescending(long[] children, double[] scores, int count){
+        for(int i = 1; i < count; i++){
+            long child = children[i];
+            double score = scores[i];
+            int j = i - 1;
+            while(j >= 0 && scores[j] < score){
+                children[j + 1] = children[j];
+                scores[j + 1] = scores[j];
+                j--;
             }
+            children[j + 1] = child;
+            scores[j + 1] = score;
         }
+    }
 
-        return value;
+    private void checkDeadline(){
+        if((++CLOCK_TICKS & 0x3FF) == 0){
+            SearchTimeout.checkClock(DEADLINE);
+        }
+    }
+
+    public int getDepth() { return MAX_DEPTH; }
+
+    public void setDepth(int depth) {
+        this.MAX_DEPTH = depth;
+        this.moveBuffers = new long[depth + 1][32];
+        this.scoreBuffers = new double[depth + 1][32];
+    }
+
+    /**
+     * @return the deepest iteration finished by the last decision
+     */
+    public int getCompletedDepth() { return COMPLETED_DEPTH; }
+
+    public long getNodes() { return NODES; }
+    public void resetNodes() { NODES = 0; }
+
+    /**
+     * @return what the most recent decision cost, null before the first one
+     */
+    public SearchStats getLastStats() { return LAST_STATS; }
+
+    /**
+     * @return the totals over every decision, which can also be registered with JMX
+     */
+    public SearchMetrics getMetrics() { return METRICS; }
+
+    /**
+     * Replaces the evaluator and clears the cache, which holds values scored by the old one
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.EVALUATOR = evaluator;
+        clearCache();
+    }
+
+    /**
+     * Replaces both bound tables with empty ones, each using the given memory budget
+     */
+    public void setCacheSize(int megabytes) {
+        this.CACHE_MEGABYTES = megabytes;
+        boolean exact = LOWER.isExactMatch();
+        this.LOWER = new TranspositionTable(megabytes);
+        this.UPPER = new TranspositionTable(megabytes);
+        setReproducible(exact);
+    }
+
+    public void clearCache() {
+        LOWER.clear();
+        UPPER.clear();
+    }
 
+    /**
+     * Only reuses cached bounds searched to exactly the requested depth, so the moves are the same as a plain
+     * minimax to MAX_DEPTH would pick (by default a bound searched deeper is reused too).
+     */
+    public void setReproducible(boolean reproducible) {
+        LOWER.setExactMatch(reproducible);
+        UPPER.setExactMatch(reproducible);
     }
 
 }
@@ -1,41 +1,43 @@
 package Search;
 
 import Environment.BitBoard;
-import Environment.TableGenerator;
 
 /**
  * Created by Rob on 11/6/2016.
+ *
+ * Scores a board for the search, higher is better. Implementations are shared between search threads,
+ * so evaluate must be safe to call concurrently.
+ *
+ * The static methods score with the default weights, see TableEvaluator.DEFAULT.
  */
-public class Evaluator {
+public interface Evaluator {
 
-    public static long[] rowMasks = BitBoard.rowMasks;
-    public static long[][] shifts = BitBoard.shifts;
+    double evaluate( long board );
 
-    //public static double[] scores = TableGenerator.genHeuristics();
-    public static double[] scores = TableGenerator.heuristicsTable();
-    public static double evaluateBoard( long board ) {
-        return eval( board ) + eval( transpose( board ) );
-    }
+    /**
+     * @return true if every rotation and reflection of a board gets the same score
+     */
+    default boolean isMirrorSymmetric() { return false; }
 
-    public static double eval( long board ){
-        return  ( scores[(int)( ( board & rowMasks[0] ) >>> shifts[0][3] ) ] ) +
-                ( scores[(int)( ( board & rowMasks[1] ) >>> shifts[1][3] ) ] ) +
-                ( scores[(int)( ( board & rowMasks[2] ) >>> shifts[2][3] ) ] ) +
-                ( scores[(int)( ( board & rowMasks[3] ) >>> shifts[3][3] ) ] );
-    }
+    /**
+     * @return an evaluator that trades a little precision for smaller tables, or this evaluator if it has none
+     */
+    default Evaluator compact() { return this; }
 
+    static double evaluateBoard( long board ) {
+        return TableEvaluator.DEFAULT.evaluateBoard( board );
+    }
 
-    public static long transpose( long board ){
-        long result = board & 0xF0000F0000F0000FL;
-        result = result | ((board & 0X0F0000F0000F0000L) >>> 12);
-        result = result | ((board & 0x00F0000F00000000L) >>> 24);
-        result = result | ((board & 0x000F000000000000L) >>> 36);
+    static double eval( long board ){
+        return TableEvaluator.DEFAULT.eval( board );
+    }
 
-        result = result | ((board & 0x0000F0000F0000F0L) << 12);
-        result = result | ((board & 0x00000000F0000F00L) << 24);
-        result = result | ((board & 0x000000000000F000L) << 36);
+    static double evaluateCompact( long board ){
+        return TableEvaluator.DEFAULT.evaluateCompact( board );
+    }
 
-        return result;
+    static long transpose( long board ){
+        return BitBoard.transpose( board );
     }
 
     /**
@@ -3,9 +3,12 @@ package Search;
 import Environment.BitBoard;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Created by Rob on 11/6/2016.
@@ -30,16 +33,103 @@ public class ExpectiMax {
      * this allows us to quickly evaluate states that appear more than once
      * in a single descision tree. This massivly reduces the branhcing factor when
      * low depth nodes get a cache hit.
+     *
+     * Entries record the remaining depth and cutoff probability they were computed with, and are only
+     * reused for a request that is no deeper. In reproducible mode they are only reused for the exact same
+     * depth and probability, which makes the result independent of the order nodes are visited in, so the
+     * parallel search picks exactly the same moves as the serial one.
+     *
+     * Only nodes at depth CACHE_DEPTH or shallower are stored.
+     *
+     * The table has a fixed size (CACHE_MEGABYTES) and is safe to share between the parallel search threads.
      */
-    private HashMap<Long, Double> CACHE = new HashMap<>();
+    private int CACHE_MEGABYTES = 32;
+    private TranspositionTable CACHE = new TranspositionTable( CACHE_MEGABYTES );
     private int CACHE_DEPTH = 12;
 
+    /**
+     * Game session mode, for an engine that plays a whole game. Every decision starts a new cache generation,
+     * so the entries of earlier moves are replaced before those of the current search, and the subtree below
+     * the move just played (searched last turn, and mostly searched again now) stays in the cache.
+     * newGame clears the cache between games. The cache size set with setCacheSize is a hard limit either way.
+     */
+    private boolean SESSION = false;
+
+    /**
+     * Number of symmetries of a board that share a cache entry. With 1 (the default) the cache is keyed on the board
+     * itself. With canonical keys, a board that is a rotation or reflection of one already searched reuses its value,
+     * since the evaluator and the tile placements are the same up to the symmetry. Only values are cached, never moves,
+     * so the move picked at the root is always one of the root board's own moves.
+     * All 8 symmetries are used when the evaluator scores mirrored rows the same, otherwise only the transpose.
+     */
+    private int CACHE_SYMMETRIES = 1;
+
+    /**
+     * Scores the leaves of the search. With COMPACT_EVALUATION the leaves are scored by EVALUATOR.compact() instead,
+     * LEAF_EVALUATOR is whichever of the two is in use.
+     */
+    private Evaluator EVALUATOR = TableEvaluator.DEFAULT;
+    private boolean COMPACT_EVALUATION = false;
+    private Evaluator LEAF_EVALUATOR = EVALUATOR;
+
     /**
      * Bitboard representation of a single "2" tile, view Bitboard.java for a detailed explanation.
      * This value will be used to place tiles in the probabilistic levels of the tree
      */
     private long  TILE_TWO = 0x1L;
 
+    /**
+     * Pool used by the parallel search, null when searching on the calling thread.
+     * Chance nodes shallower than SPLIT_DEPTH fork one task per tile placement, everything
+     * below that is searched serially by the task that reached it.
+     */
+    private ForkJoinPool POOL = null;
+    private int SPLIT_DEPTH = 2;
+
+    /**
+     * Used by the time bounded search. DEADLINE is the System.nanoTime() at which the current search
+     * gives up (0 when there is no time limit). Each search thread reads the clock every 256 max nodes it
+     * searches, counted in its own SearchStats.Counters, and every parallel task reads it when it starts.
+     * COMPLETED_DEPTH is the deepest search the last time bounded decision finished.
+     */
+    private volatile long DEADLINE = 0L;
+    private int COMPLETED_DEPTH = 0;
+
+    /**
+     * Extra chance node pruning, all off by default.
+     *
+     * MAX_FOURS caps the number of 4 tiles placed along a single path: once the cap is reached, the 4 branch
+     * of a chance node is scored with the evaluator instead of being searched. -1 means no cap.
+     *
+     * ADAPTIVE_DEPTH searches boards with many empty squares less deep, as they have the widest chance nodes and
+     * are the least dangerous: 2 plies less with more than 6 empty squares and 4 less with more than 10, never below 2.
+     *
+     * EARLY_CUTOFF scores a chance node with the evaluator when even its most likely child would fall below
+     * MINIMUM_STATE_PROBABILITY, instead of scoring each of its children.
+     */
+    private int MAX_FOURS = -1;
+    private boolean ADAPTIVE_DEPTH = false;
+    private boolean EARLY_CUTOFF = false;
+
+    /**
+     * Number of nodes each rule scored with the evaluator instead of searching since resetPruningCounters,
+     * and the plies taken off by ADAPTIVE_DEPTH.
+     */
+    private long PRUNED_BY_PROBABILITY = 0;
+    private long PRUNED_BY_FOURS = 0;
+    private long PRUNED_BY_EARLY_CUTOFF = 0;
+    private final LongAdder DEPTH_REDUCED = new LongAdder();
+
+    /**
+     * Statistics. Every search thread counts nodes into its own counters from RECORDER, which are added up into
+     * LAST_STATS when a decision is made, and into the running totals of METRICS.
+     */
+    private final SearchStats.Recorder RECORDER = new SearchStats.Recorder();
+    private final SearchMetrics METRICS = new SearchMetrics();
+    private volatile SearchStats LAST_STATS = null;
+    private long CACHE_HITS_START = 0;
+    private long CACHE_MISSES_START = 0;
+
 
     /**
      * Decides the best possible action according to our heuristics and search depth
@@ -49,25 +139,100 @@ public class ExpectiMax {
      * @return The state resulting from the best action
      */
     public long decideAction( long state ) {
+        SearchStats.Timer timer = startDecision();
+        int maxDepth = MAX_DEPTH;
+        MAX_DEPTH = searchDepth( state , maxDepth );
+        int depth = MAX_DEPTH;
+        try {
+            return search( state );
+        } finally {
+            MAX_DEPTH = maxDepth;
+            timer.iterationDone();
+            finishDecision( timer , depth );
+        }
+    }
+
+    /**
+     * Decides a batch of boards, e.g. the current boards of many games being played at once. The boards are searched
+     * on the pool set with setParallelism (on the calling thread when there is none) and share the cache, so subtrees
+     * the positions have in common are only searched once. A batch with at least as many boards as the pool has threads
+     * searches each board on a single thread, a smaller batch also splits each board's search like decideAction does.
+     *
+     * With ADAPTIVE_DEPTH the boards are grouped by their search depth, and the groups searched one after the other.
+     *
+     * @param states the boards to decide
+     * @return the state resulting from the best action for every board, in the same order (0 for a board with no moves)
+     */
+    public long[] decideActions( long[] states ) {
+        SearchStats.Timer timer = startDecision();
+        long[] results = new long[states.length];
+        int maxDepth = MAX_DEPTH;
+        int[] depths = new int[states.length];
+        for( int i = 0; i < states.length; i++ ) {
+            depths[i] = searchDepth( states[i] , maxDepth );
+        }
+        try {
+            int[] group = new int[states.length];
+            for( int depth = maxDepth; depth >= 0; depth-- ) {
+                int size = 0;
+                for( int i = 0; i < states.length; i++ ) {
+                    if( depths[i] == depth ) {
+                        group[size++] = i;
+                    }
+                }
+                if( size == 0 ) {
+                    continue;
+                }
+                MAX_DEPTH = depth;
+                if( POOL == null ) {
+                    for( int i = 0; i < size; i++ ) {
+                        results[group[i]] = searchSerial( states[group[i]] );
+                    }
+                } else {
+                    POOL.invoke( new BatchTask( states , results , group , 0 , size , size < POOL.getParallelism() ) );
+                }
+            }
+        } finally {
+            MAX_DEPTH = maxDepth;
+            timer.iterationDone();
+            finishDecision( timer , maxDepth );
+        }
+        return results;
+    }
+
+    private long search( long state ) {
+        if( POOL != null ) {
+            return POOL.invoke( new RootTask( state ) );
+        }
+        return searchSerial( state );
+    }
+
+    private long searchSerial( long state ) {
         long bestMove = 0L;
         double bestMoveValue = -1.0D / 0.0;
 
         /**
          * For optimization purposes, the moves generated by MoveGenerator.generateMoves()
          * are actually the resulting game state of each possible move, as there is no
-         * need to record the actual move
+         * need to record the actual move.
+         * Each depth of the search writes its moves into its own row of moveBuffers, so
+         * no lists are created while searching.
          */
-        Iterator moveIterator = MoveGenerator.generateMoves( state ).iterator();
+        long[][] moveBuffers = new long[MAX_DEPTH + 1][4];
+        SearchStats.Counters counters = RECORDER.local();
+        counters.maxNodes++;
+        long[] moves = moveBuffers[0];
+        int count = MoveGenerator.generateMoves( state , moves );
 
-        while( moveIterator.hasNext() ) {
-            long action =  (long)moveIterator.next();
+        for( int i = 0; i < count; i++ ) {
+            long action = moves[i];
             /**
              * For probvalue(action, 0, 1.0f)
              * The 0 is the initial depth (0 since we are at the root)
              * The initial probability is 1.0f as there is a 100% chance
              * of the game being in this state.
              */
-            double currentValue = this.probValue( action , 0 , 1.0f );
+            double currentValue = this.probValue( action , 0 , 1.0f , fourAllowance() , moveBuffers , counters );
             if( currentValue > bestMoveValue ) {
                 bestMove = action;
                 bestMoveValue = currentValue;
@@ -77,6 +242,52 @@ public class ExpectiMax {
 
     }
 
+    /**
+     * Decides the best action within a time budget using iterative deepening.
+     * Searches to depth 1, 2, 3 ... up to the depth set with setDepth, and returns the move of the deepest
+     * search that finished before the budget ran out. The search to depth 1 always finishes, so there is always a move.
+     *
+     * The cache is kept between iterations, so a deeper search starts with every value the shallower ones
+     * stored. An unfinished search stores nothing, it is abandoned before any partial value is cached.
+     *
+     * @param state Current game state
+     * @param timeBudgetMillis Time allowed for the decision
+     * @return The state resulting from the best action found in time
+     */
+    public long decideAction( long state , long timeBudgetMillis ) {
+        long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+        SearchStats.Timer timer = startDecision();
+        int maxDepth = MAX_DEPTH;
+        int searchDepth = searchDepth( state , maxDepth );
+        long bestMove = 0L;
+        COMPLETED_DEPTH = 0;
+        try {
+            for( int depth = 1; depth <= searchDepth; depth++ ) {
+                MAX_DEPTH = depth;
+                bestMove = search( state );
+                COMPLETED_DEPTH = depth;
+                timer.iterationDone();
+                if( System.nanoTime() >= deadline ) {
+                    break;
+                }
+                DEADLINE = deadline;
+            }
+        } catch( SearchTimeout e ) {
+            // The deepest search ran out of time, keep the move from the one before it.
+            // Parallel tasks still running throw at their next clock check, wait until all of them have
+            // before MAX_DEPTH and DEADLINE are restored, so none keeps searching with the wrong depth
+            if( POOL != null ) {
+                POOL.awaitQuiescence( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+            }
+            timer.iterationDone();
+        } finally {
+            MAX_DEPTH = maxDepth;
+            DEADLINE = 0L;
+            finishDecision( timer , COMPLETED_DEPTH );
+        }
+        return bestMove;
+    }
+
     /**
      * Standard Maximization stage of ExpecitMax search. Finds the move with the best value from
      * the previous depths probabilistic stage
@@ -87,30 +298,41 @@ public class ExpectiMax {
      * @return returns the value of the best move evaluated in the subtree
      */
     public double maxValue( long state , int depth , float prob ) {
+        return maxValue( state , depth , prob , fourAllowance() , new long[MAX_DEPTH + 1][4] , RECORDER.local() );
+    }
 
-        if( prob < MINIMUM_STATE_PROBABILITY || depth == MAX_DEPTH ) {
-            return Evaluator.evaluateBoard( state );
+    /**
+     * @param fours number of 4 tiles that may still be placed below this state, negative when
+     * this state was reached by placing one more than MAX_FOURS allows
+     */
+    private double maxValue( long state , int depth , float prob , int fours , long[][] moveBuffers , SearchStats.Counters counters ) {
+
+        if( isLeaf( depth , prob , fours , counters ) ) {
+            return evaluate( state );
         }
 
-        if( CACHE.containsKey( state ) ){
-            return CACHE.get( state );
+        checkDeadline( counters );
+
+        double cached = CACHE.get( cacheKey( state ) , MAX_DEPTH - depth , fours , prob );
+        if( !Double.isNaN( cached ) ){
+            return cached;
         }
 
         if( BitBoard.isTerminal( state ) ) {
+            counters.leafNodes++;
             return 0;
         }
+        counters.maxNodes++;
 
         double maxValue = 0D;
-        long action = 0L;
-        List<Long> moves = MoveGenerator.generateMoves( state );
-        int len = moves.size();
+        long[] moves = moveBuffers[depth];
+        int len = MoveGenerator.generateMoves( state , moves );
         for( int i = 0; i < len; i++ ) {
-            action = moves.get( i );
-            maxValue = Math.max( maxValue , this.probValue( action , depth+1 , prob ) );
+            maxValue = Math.max( maxValue , this.probValue( moves[i] , depth+1 , prob , fours , moveBuffers , counters ) );
+        }
+        if( CACHE_DEPTH >= depth ) {
+            CACHE.put( cacheKey( state ), MAX_DEPTH - depth, fours, prob, maxValue );
         }
-        //if(CACHE_DEPTH >= depth) {
-            CACHE.put(state, maxValue);
-        //}
         return maxValue;
 
     }
@@ -125,40 +347,438 @@ public class ExpectiMax {
      * @return
      */
     public double probValue( long state , int depth , float prob ) {
+        return probValue( state , depth , prob , fourAllowance() , new long[MAX_DEPTH + 1][4] , RECORDER.local() );
+    }
+
+    private double probValue( long state , int depth , float prob , int fours , long[][] moveBuffers , SearchStats.Counters counters ) {
         if( depth == MAX_DEPTH ){
-            return Evaluator.evaluateBoard( state );
+            counters.leafNodes++;
+            return evaluate( state );
+        }
+        if( isCutOffEarly( state , prob , counters ) ) {
+            return evaluate( state );
         }
+        counters.chanceNodes++;
         double value = 0;
         /**
          * Here we divide cprob by the number of empty spaces, as each tile has a 1/emptySpaces chance
          * of appearing in a specific space
          */
-        double emptySpaces = BitBoard.emptySpaces( state );
+        long empty = BitBoard.emptyMask( state ); //one bit set at the bottom of each empty sqaure
+        double emptySpaces = Long.bitCount( empty );
         prob /= emptySpaces;
-        long mask = 0x000000000000000FL; //used to extract each 4 bit sqaure on the board
         /**
-         * For the actual probabilistic algoritm, we start by iterating over all 16 square.
-         * if the bitwise AND of the mask and state is 0, we know this square is empty and that a tile may
-         * be placed. Each space has a 90% chance of being a TWO and a 10% chance of being a 4. So we add
+         * For the actual probabilistic algoritm, we visit only the empty squares, lowest first,
+         * taking the lowest set bit of the empty mask and clearing it each iteration.
+         * Each space has a 90% chance of being a TWO and a 10% chance of being a 4. So we add
          * the value of each possible outcome multiplied by the probability of it ocurring.
          * NOTE: The FOUR tile is generated by bitshifting the TWO tile 1 bit left
          * We then return the average of these values by dividing by the number of empty spaces.
          */
-        for( int i = 0; i < 16; i++ ) {
-            if( ( mask & state ) == 0 ) {
-                value += .9 * ( maxValue( (state | (   TILE_TWO        << ( i * 4 ) ) ), depth + 1, prob * .9f ) );
-                value += .1 * ( maxValue( (state | ( ( TILE_TWO << 1 ) << ( i * 4 ) ) ), depth + 1, prob * .1f ) );
-            }
-            mask = mask << 4;
+        for( ; empty != 0; empty &= empty - 1 ) {
+            int shift = Long.numberOfTrailingZeros( empty );
+            value += .9 * ( maxValue( (state | (   TILE_TWO        << shift ) ), depth + 1, prob * .9f , fours , moveBuffers , counters ) );
+            value += .1 * ( maxValue( (state | ( ( TILE_TWO << 1 ) << shift ) ), depth + 1, prob * .1f , afterFour( fours ) , moveBuffers , counters ) );
         }
         return value / emptySpaces;
     }
 
 
+    /**
+     * Decides whether a max node is scored with the evaluator instead of being searched,
+     * and counts the rule that pruned it
+     */
+    private boolean isLeaf( int depth , float prob , int fours , SearchStats.Counters counters ) {
+        if( depth == MAX_DEPTH ) {
+            counters.leafNodes++;
+            return true;
+        }
+        if( prob < MINIMUM_STATE_PROBABILITY ) {
+            counters.leafNodes++;
+            counters.prunedByProbability++;
+            return true;
+        }
+        if( fours < 0 ) {
+            counters.leafNodes++;
+            counters.prunedByFours++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * With EARLY_CUTOFF, a chance node whose most likely child (a 2 placed on one of its empty squares) is already
+     * below MINIMUM_STATE_PROBABILITY is scored directly. Its children would all be cut off by the probability
+     * filter and scored with the evaluator anyway, scoring the board before the tile is placed approximates
+     * their average without placing every tile.
+     */
+    private boolean isCutOffEarly( long state , float prob , SearchStats.Counters counters ) {
+        if( !EARLY_CUTOFF || prob * .9f / BitBoard.emptySpaces( state ) >= MINIMUM_STATE_PROBABILITY ) {
+            return false;
+        }
+        counters.leafNodes++;
+        counters.prunedByEarlyCutoff++;
+        return true;
+    }
+
+    /**
+     * @return the depth to search state to, MAX_DEPTH unless ADAPTIVE_DEPTH is on
+     */
+    private int searchDepth( long state , int maxDepth ) {
+        if( !ADAPTIVE_DEPTH ) {
+            return maxDepth;
+        }
+        int empty = BitBoard.emptySpaces( state );
+        int reduction = empty > 10 ? 4 : empty > 6 ? 2 : 0;
+        int depth = Math.min( maxDepth , Math.max( 2 , maxDepth - reduction ) );
+        DEPTH_REDUCED.add( maxDepth - depth );
+        return depth;
+    }
+
+    private int fourAllowance() {
+        return MAX_FOURS < 0 ? TranspositionTable.UNLIMITED_FOURS : MAX_FOURS;
+    }
+
+    /**
+     * @return the allowance left after placing a 4, without a cap every path keeps the same allowance
+     * so cache entries are shared between them
+     */
+    private static int afterFour( int fours ) {
+        return fours == TranspositionTable.UNLIMITED_FOURS ? fours : fours - 1;
+    }
+
+    private SearchStats.Timer startDecision() {
+        if( SESSION ) {
+            CACHE.nextGeneration();
+        }
+        RECORDER.reset();
+        CACHE_HITS_START = CACHE.getHits();
+        CACHE_MISSES_START = CACHE.getMisses();
+        return new SearchStats.Timer();
+    }
+
+    private void finishDecision( SearchStats.Timer timer , int completedDepth ) {
+        SearchStats.Counters counters = RECORDER.sum();
+        SearchStats stats = new SearchStats( counters , CACHE.getHits() - CACHE_HITS_START , CACHE.getMisses() - CACHE_MISSES_START ,
+                completedDepth , timer.iterations() , timer.total() );
+        PRUNED_BY_PROBABILITY += stats.prunedByProbability;
+        PRUNED_BY_FOURS += stats.prunedByFours;
+        PRUNED_BY_EARLY_CUTOFF += stats.prunedByEarlyCutoff;
+        METRICS.record( stats );
+        LAST_STATS = stats;
+    }
+
+    private double evaluate( long state ) {
+        return LEAF_EVALUATOR.evaluate( state );
+    }
+
+    private long cacheKey( long state ) {
+        switch( CACHE_SYMMETRIES ) {
+            case 8: return BitBoard.canonicalize( state );
+            case 2: return Math.min( state , BitBoard.transpose( state ) );
+            default: return state;
+        }
+    }
+
+    private void checkDeadline( SearchStats.Counters counters ) {
+        if( ( ++counters.clockTicks & 0xFF ) == 0 ) {
+            checkClock();
+        }
+    }
+
+    private void checkClock() {
+        SearchTimeout.checkClock( DEADLINE );
+    }
+
+
     public int getDepth() { return MAX_DEPTH; }
 
+    /**
+     * @return the deepest search finished by the last call to decideAction( state, timeBudgetMillis )
+     */
+    public int getCompletedDepth() { return COMPLETED_DEPTH; }
+
     public void setDepth(int depth) { this.MAX_DEPTH = depth; }
     public void setFilterProbability(float prob) { this.MINIMUM_STATE_PROBABILITY = prob;}
 
+    /**
+     * Sets the number of threads used by decideAction. A parallelism of 1 (the default)
+     * searches on the calling thread. With setReproducible(true) the parallel search picks exactly
+     * the same moves as the serial one.
+     *
+     * @param parallelism number of worker threads
+     */
+    public void setParallelism( int parallelism ) {
+        if( POOL != null ) {
+            POOL.shutdown();
+        }
+        POOL = parallelism > 1 ? new ForkJoinPool( parallelism ) : null;
+    }
+    public int getParallelism() { return POOL == null ? 1 : POOL.getParallelism(); }
+    public void setSplitDepth( int depth ) { this.SPLIT_DEPTH = depth; }
+
+    /**
+     * Replaces the cache with an empty one using the given memory budget. Keeps the current table when it already
+     * has that budget, see newGame to empty it.
+     */
+    public void setCacheSize( int megabytes ) {
+        if( megabytes == CACHE_MEGABYTES ) {
+            return;
+        }
+        this.CACHE_MEGABYTES = megabytes;
+        boolean exact = CACHE.isExactMatch();
+        this.CACHE = new TranspositionTable( megabytes );
+        this.CACHE.setExactMatch( exact );
+    }
+    public void clearCache() { CACHE.clear(); }
+
+    /**
+     * Keeps the cache between decisions, ageing out the entries of earlier moves first (see SESSION)
+     */
+    public void setSessionMode( boolean session ) { this.SESSION = session; }
+
+    /**
+     * Starts a new game, clearing the cache the last game filled
+     */
+    public void newGame() { CACHE.clear(); }
+    public TranspositionTable getCache() { return CACHE; }
+
+    public void setReproducible( boolean reproducible ) { CACHE.setExactMatch( reproducible ); }
+    public void setCacheDepth( int depth ) { this.CACHE_DEPTH = depth; }
+
+    /**
+     * Keys the cache on the canonical form of each board, so symmetric boards share an entry.
+     * Clears the cache, as entries stored under the other keying can no longer be found.
+     * A shared entry may have been computed from a mirrored board, so in reproducible mode the values
+     * can differ from a search without canonical keys in the last bits.
+     */
+    public void setCanonicalKeys( boolean canonical ) {
+        this.CACHE_SYMMETRIES = !canonical ? 1 : EVALUATOR.isMirrorSymmetric() ? 8 : 2;
+        CACHE.clear();
+    }
+
+    /**
+     * Scores leaves with the evaluator's compact form, see TableEvaluator.evaluateCompact for how far the float table
+     * can differ from the default
+     */
+    public void setCompactEvaluation( boolean compact ) {
+        this.COMPACT_EVALUATION = compact;
+        this.LEAF_EVALUATOR = compact ? EVALUATOR.compact() : EVALUATOR;
+    }
+
+    /**
+     * Replaces the evaluator and clears the cache, which holds values scored by the old one.
+     * With canonical keys on, the symmetries used are chosen again for the new evaluator.
+     */
+    public void setEvaluator( Evaluator evaluator ) {
+        this.EVALUATOR = evaluator;
+        setCompactEvaluation( COMPACT_EVALUATION );
+        if( CACHE_SYMMETRIES != 1 ) {
+            setCanonicalKeys( true );
+        }
+        CACHE.clear();
+    }
+    public Evaluator getEvaluator() { return EVALUATOR; }
+
+    /**
+     * @return the number of symmetric boards that share a cache entry, 1 without canonical keys
+     */
+    public int getCacheSymmetries() { return CACHE_SYMMETRIES; }
+
+    /**
+     * @param fours maximum number of 4 tiles searched along a single path, -1 (the default) for no limit
+     */
+    public void setMaxFours( int fours ) { this.MAX_FOURS = fours; }
+    public void setAdaptiveDepth( boolean adaptive ) { this.ADAPTIVE_DEPTH = adaptive; }
+    public void setEarlyCutoff( boolean earlyCutoff ) { this.EARLY_CUTOFF = earlyCutoff; }
+
+    public long getPrunedByProbability() { return PRUNED_BY_PROBABILITY; }
+    public long getPrunedByFours() { return PRUNED_BY_FOURS; }
+    public long getPrunedByEarlyCutoff() { return PRUNED_BY_EARLY_CUTOFF; }
+
+    /**
+     * @return the total number of plies taken off searches by ADAPTIVE_DEPTH
+     */
+    public long getDepthReduced() { return DEPTH_REDUCED.sum(); }
+
+    public void resetPruningCounters() {
+        PRUNED_BY_PROBABILITY = 0;
+        PRUNED_BY_FOURS = 0;
+        PRUNED_BY_EARLY_CUTOFF = 0;
+        DEPTH_REDUCED.reset();
+    }
+
+    /**
+     * @return what the most recent decision cost, null before the first one
+     */
+    public SearchStats getLastStats() { return LAST_STATS; }
+
+    /**
+     * @return the totals over every decision, which can also be registered with JMX
+     */
+    public SearchMetrics getMetrics() { return METRICS; }
+
+
+    /**
+     * Parallel search tasks. These mirror maxValue and probValue, but fork their children
+     * and combine the results in the same order as the serial search so the sums are identical.
+     */
+    private class RootTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long state;
+
+        RootTask( long state ) { this.state = state; }
+
+        @Override
+        protected Long compute() {
+            RECORDER.local().maxNodes++;
+            long[] moves = new long[4];
+            int count = MoveGenerator.generateMoves( state , moves );
+            List<ChanceTask> tasks = new ArrayList<>( count );
+            for( int i = 0; i < count; i++ ) {
+                tasks.add( new ChanceTask( moves[i] , 0 , 1.0f , fourAllowance() ) );
+            }
+            invokeAll( tasks );
+            long bestMove = 0L;
+            double bestMoveValue = -1.0D / 0.0;
+            for( int i = 0; i < tasks.size(); i++ ) {
+                double currentValue = tasks.get( i ).join();
+                if( currentValue > bestMoveValue ) {
+                    bestMove = moves[i];
+                    bestMoveValue = currentValue;
+                }
+            }
+            return bestMove;
+        }
+    }
+
+    /**
+     * Searches the boards at group[from] to group[to - 1] of a batch, splitting the range in halves
+     */
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] states;
+        private final long[] results;
+        private final int[] group;
+        private final int from;
+        private final int to;
+        private final boolean splitBoards;
+
+        BatchTask( long[] states , long[] results , int[] group , int from , int to , boolean splitBoards ) {
+            this.states = states;
+            this.results = results;
+            this.group = group;
+            this.from = from;
+            this.to = to;
+            this.splitBoards = splitBoards;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from > 1 ) {
+                int middle = ( from + to ) >>> 1;
+                invokeAll( new BatchTask( states , results , group , from , middle , splitBoards ),
+                           new BatchTask( states , results , group , middle , to , splitBoards ) );
+                return;
+            }
+            long state = states[group[from]];
+            results[group[from]] = splitBoards ? new RootTask( state ).invoke() : searchSerial( state );
+        }
+    }
+
+    private class ChanceTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final long state;
+        private final int depth;
+        private final float prob;
+        private final int fours;
+
+        ChanceTask( long state , int depth , float prob , int fours ) {
+            this.state = state;
+            this.depth = depth;
+            this.prob = prob;
+            this.fours = fours;
+        }
+
+        @Override
+        protected Double compute() {
+            SearchStats.Counters counters = RECORDER.local();
+            if( depth >= SPLIT_DEPTH || depth == MAX_DEPTH ) {
+                return probValue( state , depth , prob , fours , new long[MAX_DEPTH + 1][4] , counters );
+            }
+            if( isCutOffEarly( state , prob , counters ) ) {
+                return evaluate( state );
+            }
+            checkClock();
+            counters.chanceNodes++;
+            long empty = BitBoard.emptyMask( state );
+            double emptySpaces = Long.bitCount( empty );
+            float p = (float)( prob / emptySpaces );
+            List<MaxTask> tasks = new ArrayList<>( 32 );
+            for( ; empty != 0; empty &= empty - 1 ) {
+                int shift = Long.numberOfTrailingZeros( empty );
+                tasks.add( new MaxTask( (state | (   TILE_TWO        << shift ) ), depth + 1, p * .9f , fours ) );
+                tasks.add( new MaxTask( (state | ( ( TILE_TWO << 1 ) << shift ) ), depth + 1, p * .1f , afterFour( fours ) ) );
+            }
+            invokeAll( tasks );
+            double value = 0;
+            for( int i = 0; i < tasks.size(); i += 2 ) {
+                value += .9 * tasks.get( i ).join();
+                value += .1 * tasks.get( i + 1 ).join();
+            }
+            return value / emptySpaces;
+        }
+    }
 
-}
\ No newline at end of file
+    private class MaxTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final long state;
+        private final int depth;
+        private final float prob;
+        private final int fours;
+
+        MaxTask( long state , int depth , float prob , int fours ) {
+            this.state = state;
+            this.depth = depth;
+            this.prob = prob;
+            this.fours = fours;
+        }
+
+        @Override
+        protected Double compute() {
+            SearchStats.Counters counters = RECORDER.local();
+            if( isLeaf( depth , prob , fours , counters ) ) {
+                return evaluate( state );
+            }
+            checkClock();
+            double cached = CACHE.get( cacheKey( state ) , MAX_DEPTH - depth , fours , prob );
+            if( !Double.isNaN( cached ) ){
+                return cached;
+            }
+            if( BitBoard.isTerminal( state ) ) {
+                counters.leafNodes++;
+                return 0D;
+            }
+            counters.maxNodes++;
+            long[] moves = new long[4];
+            int count = MoveGenerator.generateMoves( state , moves );
+            List<ChanceTask> tasks = new ArrayList<>( count );
+            for( int i = 0; i < count; i++ ) {
+                tasks.add( new ChanceTask( moves[i] , depth + 1 , prob , fours ) );
+            }
+            invokeAll( tasks );
+            double maxValue = 0D;
+            for( ChanceTask task : tasks ) {
+                maxValue = Math.max( maxValue , task.join() );
+            }
+            if( CACHE_DEPTH >= depth ) {
+                CACHE.put( cacheKey( state ), MAX_DEPTH - depth, fours, prob, maxValue );
+            }
+            return maxValue;
+        }
+    }
+}
@@ -9,6 +9,14 @@ import java.util.List;
  */
 public class MoveGenerator {
 
+    /**
+     * Directions reported by generateMoves, in the order the moves are generated
+     */
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int UP = 2;
+    public static final int DOWN = 3;
+
 
     public static List<Long> generateMoves(long board) {
         List<Long> moves = new ArrayList<>();
@@ -30,4 +38,75 @@ public class MoveGenerator {
         }
         return moves;
     }
+
+    /**
+     * Writes the states resulting from every legal move into moves, without allocating.
+     * The moves are in the same order as generateMoves(long).
+     *
+     * @param board the current state
+     * @param moves buffer of at least 4 longs to write the resulting states into
+     * @return the number of legal moves written
+     */
+    public static int generateMoves(long board, long[] moves) {
+        int count = 0;
+        long left = BitBoard.moveLeft(board);
+        if(left != board){
+            moves[count++] = left;
+        }
+        long right = BitBoard.moveRight(board);
+        if(right != board){
+            moves[count++] = right;
+        }
+        long up = BitBoard.moveUp(board);
+        if(up != board){
+            moves[count++] = up;
+        }
+        long down = BitBoard.moveDown(board);
+        if(down != board){
+            moves[count++] = down;
+        }
+        return count;
+    }
+
+    /**
+     * Same as generateMoves(long, long[]), but also records which direction produced each state
+     *
+     * @param directions buffer of at least 4 ints, directions[i] is set to the direction (LEFT, RIGHT, UP or DOWN) of moves[i]
+     * @return the number of legal moves written
+     */
+    public static int generateMoves(long board, long[] moves, int[] directions) {
+        int count = 0;
+        for(int direction = LEFT; direction <= DOWN; direction++){
+            long result = move(board, direction);
+            if(result != board){
+                moves[count] = result;
+                directions[count++] = direction;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The score a move earns (the sum of the tiles its merges make), from the row score tables. Columns are
+     * scored as the rows of the transposed board, an up move merges them like a left move and a down move like a right one.
+     *
+     * @param direction LEFT, RIGHT, UP or DOWN
+     */
+    public static int score(long board, int direction) {
+        RowTables tables = TableGenerator.rowTables;
+        int[] scores = direction == LEFT || direction == UP ? tables.leftScores : tables.rightScores;
+        long rows = direction == UP || direction == DOWN ? BitBoard.transpose(board) : board;
+        return scores[(int)(rows >>> 48)] + scores[(int)(rows >>> 32) & 0xFFFF]
+                + scores[(int)(rows >>> 16) & 0xFFFF] + scores[(int)rows & 0xFFFF];
+    }
+
+    public static long move(long board, int direction) {
+        switch(direction){
+            case LEFT:  return BitBoard.moveLeft(board);
+            case RIGHT: return BitBoard.moveRight(board);
+            case UP:    return BitBoard.moveUp(board);
+            case DOWN:  return BitBoard.moveDown(board);
+            default: throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
 }
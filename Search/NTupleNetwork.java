@@ -0,0 +1,268 @@
+package Search;
+
+import Environment.AtomicFile;
+import Environment.RowTables;
+import Environment.TableGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * N-tuple network evaluator: a board scores the sum of one learned weight per tuple and symmetry.
+ *
+ * A tuple is a fixed group of 4 to 6 cells (numbered 0 to 15, row by row from the top left, so cell n is the
+ * nibble at bit 60 - 4n). The tiles in its cells, read as a base 16 number, index that tuple's weight array.
+ * Every tuple is read in all 8 rotations and reflections of the board (symmetric sampling), so one weight
+ * array learns all symmetric placements of the tuple and every symmetric board scores the same.
+ * The cell positions of every symmetry are worked out once, evaluating never transforms the board.
+ *
+ * Weights are trained by Harness.NTupleTrainer with temporal difference learning, and value estimates the score
+ * still to be gained from a board. evaluate, which the search scores leaves with, adds the score already earned:
+ * the build score of every row (see TableGenerator.buildScore, the score of every merge that made the tiles), so
+ * leaves reached with different merges on the way compare by earned plus expected score, not expected score alone.
+ *
+ * The weight file layout (big endian) is:
+ *
+ * int  magic    0x4E545550 ("NTUP")
+ * int  version
+ * int  tuples   number of tuples
+ * long checksum CRC32 of everything after the header
+ * then for every tuple: byte cell count, the cells as bytes
+ * then for every tuple: float[16 ^ cell count] weights
+ */
+public class NTupleNetwork implements Evaluator {
+
+    /**
+     * Two straight lines and three squares, 65536 weights each (1.25 MB)
+     */
+    public static final int[][] FOUR_TUPLES = {
+            {0, 1, 2, 3}, {4, 5, 6, 7}, {0, 1, 4, 5}, {1, 2, 5, 6}, {5, 6, 9, 10}
+    };
+
+    /**
+     * The four 6-tuples of Jaskowski's 2048 networks, 16.7 million weights each (256 MB)
+     */
+    public static final int[][] SIX_TUPLES = {
+            {0, 1, 2, 3, 4, 5}, {4, 5, 6, 7, 8, 9}, {0, 1, 2, 4, 5, 6}, {4, 5, 6, 8, 9, 10}
+    };
+
+    private static final int MAGIC = 0x4E545550;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * TableGenerator.buildScore of every row
+     */
+    private static final float[] BUILD_SCORES = new float[RowTables.SIZE];
+    static {
+        for( int row = 0; row < RowTables.SIZE; row++ ) {
+            BUILD_SCORES[row] = TableGenerator.buildScore( row );
+        }
+    }
+
+    private final int[][] tuples;
+    private final float[][] weights;
+
+    /**
+     * Bit shifts of the cells of every tuple in every symmetry, feature f reads tuple f / 8
+     */
+    private final int[][] shifts;
+
+    /**
+     * Creates a network with every weight 0
+     *
+     * @param tuples the cells of every tuple
+     */
+    public NTupleNetwork( int[][] tuples ) {
+        this( tuples, emptyWeights( tuples ) );
+    }
+
+    private NTupleNetwork( int[][] tuples, float[][] weights ) {
+        this.tuples = new int[tuples.length][];
+        this.shifts = new int[tuples.length * 8][];
+        for( int t = 0; t < tuples.length; t++ ) {
+            if( tuples[t].length < 1 || tuples[t].length > 6 ) {
+                throw new IllegalArgumentException( "Tuples have 1 to 6 cells, got " + tuples[t].length );
+            }
+            for( int cell : tuples[t] ) {
+                if( cell < 0 || cell > 15 ) {
+                    throw new IllegalArgumentException( "Tuple cells are numbered 0 to 15, got " + cell );
+                }
+            }
+            this.tuples[t] = tuples[t].clone();
+            for( int symmetry = 0; symmetry < 8; symmetry++ ) {
+                int[] cellShifts = new int[tuples[t].length];
+                for( int c = 0; c < cellShifts.length; c++ ) {
+                    cellShifts[c] = 60 - 4 * symmetry( tuples[t][c], symmetry );
+                }
+                shifts[t * 8 + symmetry] = cellShifts;
+            }
+        }
+        this.weights = weights;
+    }
+
+    /**
+     * The score earned so far plus the score the network expects to still be gained
+     */
+    @Override
+    public double evaluate( long board ) {
+        return BUILD_SCORES[(int)( board >>> 48 )] + BUILD_SCORES[(int)( board >>> 32 ) & 0xFFFF]
+                + BUILD_SCORES[(int)( board >>> 16 ) & 0xFFFF] + BUILD_SCORES[(int)board & 0xFFFF] + value( board );
+    }
+
+    /**
+     * @return the score the network expects to still be gained from the board, the value trained by update
+     */
+    public double value( long board ) {
+        float value = 0;
+        for( int f = 0; f < shifts.length; f++ ) {
+            value += weights[f >>> 3][index( board, shifts[f] )];
+        }
+        return value;
+    }
+
+    /**
+     * Adds delta to every weight that value reads for the board, the gradient step of temporal difference learning.
+     * Training threads may update the same network without locking, an update lost to a race is harmless.
+     */
+    public void update( long board, float delta ) {
+        for( int f = 0; f < shifts.length; f++ ) {
+            weights[f >>> 3][index( board, shifts[f] )] += delta;
+        }
+    }
+
+    /**
+     * @return a copy of the cells of every tuple
+     */
+    public int[][] getTuples() {
+        int[][] copy = new int[tuples.length][];
+        for( int t = 0; t < tuples.length; t++ ) {
+            copy[t] = tuples[t].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of weights value adds up for a board
+     */
+    public int features() {
+        return shifts.length;
+    }
+
+    /**
+     * Symmetric sampling scores every rotation and reflection of a board the same
+     */
+    @Override
+    public boolean isMirrorSymmetric() { return true; }
+
+    private static int index( long board, int[] cellShifts ) {
+        int index = 0;
+        for( int shift : cellShifts ) {
+            index = ( index << 4 ) | (int)( ( board >>> shift ) & 0xF );
+        }
+        return index;
+    }
+
+    /**
+     * Moves a cell by one of the 8 symmetries of the square, symmetry % 4 clockwise quarter turns
+     * followed by a transpose when symmetry >= 4 (the same numbering as BitBoard.symmetry)
+     */
+    private static int symmetry( int cell, int symmetry ) {
+        int row = cell / 4, col = cell % 4;
+        for( int i = 0; i < ( symmetry & 3 ); i++ ) {
+            int turned = row;
+            row = col;
+            col = 3 - turned;
+        }
+        return symmetry >= 4 ? col * 4 + row : row * 4 + col;
+    }
+
+    private static float[][] emptyWeights( int[][] tuples ) {
+        float[][] weights = new float[tuples.length][];
+        for( int t = 0; t < tuples.length; t++ ) {
+            weights[t] = new float[1 << ( 4 * tuples[t].length )];
+        }
+        return weights;
+    }
+
+    /**
+     * Maps a weight file and copies the weights into arrays, so evaluating and training read plain float[]s
+     *
+     * @throws IOException if the file cannot be read, or its header, size or checksum are wrong
+     */
+    public static NTupleNetwork load( Path path ) throws IOException {
+        try( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+            if( channel.size() < HEADER_SIZE ) {
+                throw new IOException( path + " is not an n-tuple weight file (too short)" );
+            }
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            if( buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) {
+                throw new IOException( path + " is not an n-tuple weight file (wrong header)" );
+            }
+            int count = buffer.getInt();
+            long checksum = buffer.getLong();
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update( payload.duplicate() );
+            if( crc.getValue() != checksum ) {
+                throw new IOException( path + " is corrupt (checksum mismatch)" );
+            }
+
+            int[][] tuples = new int[count][];
+            for( int t = 0; t < count; t++ ) {
+                tuples[t] = new int[payload.get()];
+                for( int c = 0; c < tuples[t].length; c++ ) {
+                    tuples[t][c] = payload.get();
+                }
+            }
+            float[][] weights = emptyWeights( tuples );
+            long expected = payload.position();
+            for( float[] tuple : weights ) {
+                expected += (long)tuple.length * Float.BYTES;
+            }
+            if( expected != payload.limit() ) {
+                throw new IOException( path + " is corrupt (wrong size)" );
+            }
+            for( float[] tuple : weights ) {
+                payload.asFloatBuffer().get( tuple );
+                payload.position( payload.position() + tuple.length * Float.BYTES );
+            }
+            return new NTupleNetwork( tuples, weights );
+        }
+    }
+
+    /**
+     * Writes the network under a temporary name and moves it into place, so a reader never maps a half written file
+     */
+    public void save( Path path ) throws IOException {
+        int size = 0;
+        for( int t = 0; t < tuples.length; t++ ) {
+            size += 1 + tuples[t].length + weights[t].length * Float.BYTES;
+        }
+        ByteBuffer payload = ByteBuffer.allocate( size );
+        for( int[] tuple : tuples ) {
+            payload.put( (byte)tuple.length );
+            for( int cell : tuple ) {
+                payload.put( (byte)cell );
+            }
+        }
+        for( float[] tuple : weights ) {
+            payload.asFloatBuffer().put( tuple );
+            payload.position( payload.position() + tuple.length * Float.BYTES );
+        }
+        payload.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update( payload.duplicate() );
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+        header.putInt( MAGIC ).putInt( VERSION ).putInt( tuples.length ).putLong( crc.getValue() );
+        header.flip();
+
+        AtomicFile.write( path, header, payload );
+    }
+}
@@ -0,0 +1,81 @@
+package Search;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Running totals of the SearchStats of every decision an engine made. Read them directly, or register the
+ * engine's metrics with the platform MBean server to watch them from a JMX console:
+ *
+ * engine.getMetrics().register( "ai2048:type=ExpectiMax,name=game1" );
+ */
+public class SearchMetrics implements SearchMetricsMXBean {
+
+    private long decisions;
+    private long maxNodes;
+    private long chanceNodes;
+    private long leafNodes;
+    private long cacheHits;
+    private long cacheMisses;
+    private long prunedByProbability;
+    private long prunedByFours;
+    private long prunedByEarlyCutoff;
+    private long totalNanos;
+    private long lastDecisionNanos;
+    private int lastCompletedDepth;
+
+    synchronized void record( SearchStats stats ) {
+        decisions++;
+        maxNodes += stats.maxNodes;
+        chanceNodes += stats.chanceNodes;
+        leafNodes += stats.leafNodes;
+        cacheHits += stats.cacheHits;
+        cacheMisses += stats.cacheMisses;
+        prunedByProbability += stats.prunedByProbability;
+        prunedByFours += stats.prunedByFours;
+        prunedByEarlyCutoff += stats.prunedByEarlyCutoff;
+        totalNanos += stats.totalNanos;
+        lastDecisionNanos = stats.totalNanos;
+        lastCompletedDepth = stats.completedDepth;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server
+     *
+     * @param name the JMX object name, e.g. "ai2048:type=ExpectiMax,name=game1"
+     */
+    public void register( String name ) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this, new ObjectName( name ) );
+    }
+
+    public void unregister( String name ) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean( new ObjectName( name ) );
+    }
+
+    @Override public synchronized long getDecisions() { return decisions; }
+    @Override public synchronized long getMaxNodes() { return maxNodes; }
+    @Override public synchronized long getChanceNodes() { return chanceNodes; }
+    @Override public synchronized long getLeafNodes() { return leafNodes; }
+    @Override public synchronized long getCacheHits() { return cacheHits; }
+    @Override public synchronized long getCacheMisses() { return cacheMisses; }
+    @Override public synchronized long getPrunedByProbability() { return prunedByProbability; }
+    @Override public synchronized long getPrunedByFours() { return prunedByFours; }
+    @Override public synchronized long getPrunedByEarlyCutoff() { return prunedByEarlyCutoff; }
+    @Override public synchronized long getTotalNanos() { return totalNanos; }
+    @Override public synchronized long getLastDecisionNanos() { return lastDecisionNanos; }
+    @Override public synchronized int getLastCompletedDepth() { return lastCompletedDepth; }
+
+    @Override
+    public synchronized double getCacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double)cacheHits / lookups;
+    }
+
+    @Override
+    public synchronized void reset() {
+        decisions = maxNodes = chanceNodes = leafNodes = cacheHits = cacheMisses = 0;
+        prunedByProbability = prunedByFours = prunedByEarlyCutoff = totalNanos = lastDecisionNanos = 0;
+        lastCompletedDepth = 0;
+    }
+}
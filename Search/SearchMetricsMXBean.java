@@ -0,0 +1,31 @@
+package Search;
+
+/**
+ * Totals over every decision an engine made, as exposed through JMX by SearchMetrics.register
+ */
+public interface SearchMetricsMXBean {
+
+    long getDecisions();
+    long getMaxNodes();
+    long getChanceNodes();
+    long getLeafNodes();
+    long getCacheHits();
+    long getCacheMisses();
+    double getCacheHitRate();
+    long getPrunedByProbability();
+    long getPrunedByFours();
+    long getPrunedByEarlyCutoff();
+    long getTotalNanos();
+
+    /**
+     * @return the time of the most recent decision
+     */
+    long getLastDecisionNanos();
+
+    /**
+     * @return the deepest search finished by the most recent decision
+     */
+    int getLastCompletedDepth();
+
+    void reset();
+}
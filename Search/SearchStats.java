@@ -0,0 +1,188 @@
+package Search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * What a single decision cost: the nodes of each kind the search visited, how the cache did, how many nodes
+ * each pruning rule cut, and the time taken by each iterative deepening iteration.
+ *
+ * Engines count into a plain Counters object per search thread (no atomics or shared cache lines while searching)
+ * and add the threads' counters up once the decision is made. ABPruning has no chance nodes, its min nodes
+ * (tile placements) are counted as chance nodes.
+ */
+public final class SearchStats {
+
+    public final long maxNodes;
+    public final long chanceNodes;
+
+    /**
+     * Nodes scored by the evaluator, or as 0 for a lost game
+     */
+    public final long leafNodes;
+
+    public final long cacheHits;
+    public final long cacheMisses;
+
+    public final long prunedByProbability;
+    public final long prunedByFours;
+    public final long prunedByEarlyCutoff;
+
+    /**
+     * The deepest search that finished, the search depth for a decision without a time budget
+     */
+    public final int completedDepth;
+
+    /**
+     * Time of each iterative deepening iteration, the last one may have been abandoned at the deadline.
+     * How many iterations a decision without a time budget has depends on the engine: ExpectiMax searches
+     * straight to its depth in one, ABPruning always deepens one ply at a time and records one per depth.
+     */
+    private final long[] iterationNanos;
+    public final long totalNanos;
+
+    SearchStats( Counters counters, long cacheHits, long cacheMisses, int completedDepth, long[] iterationNanos, long totalNanos ) {
+        this.maxNodes = counters.maxNodes;
+        this.chanceNodes = counters.chanceNodes;
+        this.leafNodes = counters.leafNodes;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.prunedByProbability = counters.prunedByProbability;
+        this.prunedByFours = counters.prunedByFours;
+        this.prunedByEarlyCutoff = counters.prunedByEarlyCutoff;
+        this.completedDepth = completedDepth;
+        this.iterationNanos = iterationNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    public long nodes() {
+        return maxNodes + chanceNodes + leafNodes;
+    }
+
+    public double cacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double)cacheHits / lookups;
+    }
+
+    public long[] getIterationNanos() {
+        return iterationNanos.clone();
+    }
+
+    /**
+     * The statistics as name to value pairs, for a metrics system or a log line
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put( "maxNodes", maxNodes );
+        values.put( "chanceNodes", chanceNodes );
+        values.put( "leafNodes", leafNodes );
+        values.put( "cacheHits", cacheHits );
+        values.put( "cacheMisses", cacheMisses );
+        values.put( "cacheHitRate", cacheHitRate() );
+        values.put( "prunedByProbability", prunedByProbability );
+        values.put( "prunedByFours", prunedByFours );
+        values.put( "prunedByEarlyCutoff", prunedByEarlyCutoff );
+        values.put( "completedDepth", completedDepth );
+        values.put( "totalNanos", totalNanos );
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot() + " iterationNanos=" + Arrays.toString( iterationNanos );
+    }
+
+    /**
+     * Node counts of one search thread
+     */
+    static final class Counters {
+        long maxNodes;
+        long chanceNodes;
+        long leafNodes;
+        long prunedByProbability;
+        long prunedByFours;
+        long prunedByEarlyCutoff;
+
+        /**
+         * Max nodes searched by the thread, only used to decide when to read the clock, not a statistic
+         */
+        int clockTicks;
+
+        void reset() {
+            maxNodes = chanceNodes = leafNodes = 0;
+            prunedByProbability = prunedByFours = prunedByEarlyCutoff = 0;
+        }
+
+        void add( Counters other ) {
+            maxNodes += other.maxNodes;
+            chanceNodes += other.chanceNodes;
+            leafNodes += other.leafNodes;
+            prunedByProbability += other.prunedByProbability;
+            prunedByFours += other.prunedByFours;
+            prunedByEarlyCutoff += other.prunedByEarlyCutoff;
+        }
+    }
+
+    /**
+     * Hands every thread that searches for an engine its own Counters, and adds them up after a decision.
+     * reset and sum must only be called while no search is running, the pool's join makes the threads'
+     * counts visible to the thread calling them.
+     */
+    static final class Recorder {
+        private final List<Counters> all = new CopyOnWriteArrayList<>();
+        private final ThreadLocal<Counters> local = ThreadLocal.withInitial( () -> {
+            Counters counters = new Counters();
+            all.add( counters );
+            return counters;
+        } );
+
+        Counters local() {
+            return local.get();
+        }
+
+        void reset() {
+            for( Counters counters : all ) {
+                counters.reset();
+            }
+        }
+
+        Counters sum() {
+            Counters total = new Counters();
+            for( Counters counters : all ) {
+                total.add( counters );
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Collects the time of each iteration of a decision
+     */
+    static final class Timer {
+        private final long start = System.nanoTime();
+        private long iterationStart = start;
+        private final List<Long> iterations = new ArrayList<>();
+
+        void iterationDone() {
+            long now = System.nanoTime();
+            iterations.add( now - iterationStart );
+            iterationStart = now;
+        }
+
+        long[] iterations() {
+            long[] nanos = new long[iterations.size()];
+            for( int i = 0; i < nanos.length; i++ ) {
+                nanos[i] = iterations.get( i );
+            }
+            return nanos;
+        }
+
+        long total() {
+            return System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package Search;
+
+/**
+ * Thrown to abandon a time bounded search, without a stack trace as it is only used to unwind the search.
+ * Both engines throw the same instance from checkClock.
+ */
+final class SearchTimeout extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final SearchTimeout INSTANCE = new SearchTimeout();
+
+    private SearchTimeout() { super( null, null, false, false ); }
+
+    /**
+     * @param deadline System.nanoTime() at which the search gives up, 0 when there is no time limit
+     * @throws SearchTimeout if the deadline has passed
+     */
+    static void checkClock( long deadline ) {
+        if( deadline != 0L && System.nanoTime() > deadline ) {
+            throw INSTANCE;
+        }
+    }
+}
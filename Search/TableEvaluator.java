@@ -0,0 +1,161 @@
+package Search;
+
+import Environment.BitBoard;
+import Environment.HeuristicWeights;
+import Environment.TableGenerator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scores a board as the sum of a table lookup for each of its rows and columns.
+ *
+ * Tables are built from a HeuristicWeights by TableGenerator.heuristicsTable, which takes a while and 768 KB
+ * (the double table and its float copy), so forWeights keeps one evaluator per weight set: any number of engines
+ * and threads searching with the same weights share a table, and several weight sets can be used side by side.
+ */
+public class TableEvaluator implements Evaluator {
+
+    private static final Map<HeuristicWeights, TableEvaluator> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The evaluator of TableGenerator.heuristics, shared as the evaluator of the weights it was built from:
+     * the default weights, or the weights stored in the table file loaded with -Dbitboard.tables
+     */
+    public static final TableEvaluator DEFAULT = new TableEvaluator( TableGenerator.heuristics );
+    static {
+        TABLES.put( TableGenerator.heuristicWeights, DEFAULT );
+    }
+
+    /**
+     * Largest difference between the compact and the double evaluation, relative to the sum of the
+     * absolute values of the eight row and column scores. Each of the eight lookups is rounded to float once,
+     * and the seven additions in float round once more each, so the error stays within 16 float ulps (2^-24 each).
+     * The default heuristic table only holds multiples of 1000, which floats represent exactly, so for it the
+     * two evaluations are identical.
+     */
+    public static final double COMPACT_TOLERANCE = 16 * Math.ulp( 1.0f );
+
+    private static final long[] rowMasks = BitBoard.rowMasks;
+    private static final long[][] shifts = BitBoard.shifts;
+
+    private final double[] scores;
+
+    /**
+     * scores rounded to float, half the size so it stays in L2 next to the move tables
+     */
+    private final float[] compactScores;
+    private final boolean compact;
+    private final TableEvaluator other;
+
+    /**
+     * @param scores score of every row, indexed by the 16 bit row
+     */
+    public TableEvaluator( double[] scores ) {
+        this.scores = scores;
+        this.compactScores = toFloat( scores );
+        this.compact = false;
+        this.other = new TableEvaluator( this );
+    }
+
+    private TableEvaluator( TableEvaluator exact ) {
+        this.scores = exact.scores;
+        this.compactScores = exact.compactScores;
+        this.compact = true;
+        this.other = exact;
+    }
+
+    /**
+     * @return the shared evaluator for the weights, building its table the first time they are used
+     */
+    public static TableEvaluator forWeights( HeuristicWeights weights ) {
+        return TABLES.computeIfAbsent( weights, w -> new TableEvaluator( TableGenerator.heuristicsTable( w ) ) );
+    }
+
+    /**
+     * Drops the shared table of a weight set, for long weight sweeps that would otherwise keep every table alive.
+     * Engines still holding the evaluator keep working with it.
+     */
+    public static void release( HeuristicWeights weights ) {
+        if( !weights.equals( TableGenerator.heuristicWeights ) ) {
+            TABLES.remove( weights );
+        }
+    }
+
+    @Override
+    public double evaluate( long board ) {
+        return compact ? evaluateCompact( board ) : evaluateBoard( board );
+    }
+
+    /**
+     * @return the evaluator using the float table, see evaluateCompact
+     */
+    @Override
+    public TableEvaluator compact() {
+        return compact ? this : other;
+    }
+
+    public double evaluateBoard( long board ) {
+        return eval( board ) + eval( BitBoard.transpose( board ) );
+    }
+
+    public double eval( long board ){
+        return  ( scores[(int)( ( board & rowMasks[0] ) >>> shifts[0][3] ) ] ) +
+                ( scores[(int)( ( board & rowMasks[1] ) >>> shifts[1][3] ) ] ) +
+                ( scores[(int)( ( board & rowMasks[2] ) >>> shifts[2][3] ) ] ) +
+                ( scores[(int)( ( board & rowMasks[3] ) >>> shifts[3][3] ) ] );
+    }
+
+    /**
+     * Same as evaluateBoard within COMPACT_TOLERANCE, using compactScores. The columns are read straight from
+     * the board instead of transposing it: masking one tile of every row and folding the four tiles into
+     * the low 16 bits gives the column as a row, top tile highest, which is the row of the transposed board.
+     */
+    public double evaluateCompact( long board ){
+        float[] table = compactScores;
+        return table[(int)( board >>> 48 )] + table[(int)( board >>> 32 ) & 0xFFFF]
+                + table[(int)( board >>> 16 ) & 0xFFFF] + table[(int)board & 0xFFFF]
+                + table[column( board >>> 12 )] + table[column( board >>> 8 )]
+                + table[column( board >>> 4 )] + table[column( board )];
+    }
+
+    /**
+     * The table scores a board and its transpose the same way by construction. It scores every rotation
+     * and reflection of a board the same only when each row scores the same as its reverse.
+     *
+     * @return true if the row scores are unchanged by reversing the row
+     */
+    @Override
+    public boolean isMirrorSymmetric(){
+        for( int row = 0; row < scores.length; row++ ){
+            if( scores[row] != scores[(int)TableGenerator.reverse( row )] ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the score of a single row
+     */
+    public double score( int row ) {
+        return scores[row];
+    }
+
+    /**
+     * @param board board shifted so the column to read is the lowest tile of each row
+     * @return the column packed as a row
+     */
+    private static int column( long board ){
+        long tiles = board & 0x000F000F000F000FL;
+        return (int)( tiles | ( tiles >>> 12 ) | ( tiles >>> 24 ) | ( tiles >>> 36 ) ) & 0xFFFF;
+    }
+
+    private static float[] toFloat( double[] scores ){
+        float[] compact = new float[scores.length];
+        for( int i = 0; i < scores.length; i++ ){
+            compact[i] = (float)scores[i];
+        }
+        return compact;
+    }
+}
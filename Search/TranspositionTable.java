@@ -0,0 +1,210 @@
+package Search;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size transposition table for the ExpectiMax search.
+ *
+ * Entries live in a single long[] so no objects are created per lookup. Each slot is three longs:
+ *
+ * { key ^ value ^ meta, value, meta }
+ *
+ * where value is the raw bits of the cached double and meta packs the number of 4 spawns the search still
+ * allowed below the board, the generation the entry was last used in, the remaining search depth and the cutoff
+ * probability the value was computed with ( fours << 48 | generation << 40 | (remaining + 1) << 32 | floatBits(prob) ).
+ * A meta of 0 marks an empty slot.
+ *
+ * A lookup only hits when the stored entry was searched at least as deep as the request: at least as many
+ * remaining plies, a probability at least as high (so no more of its subtree was cut off by
+ * the probability filter) and at least as many 4 spawns allowed. With exact matching enabled all three must be equal
+ * to the request instead, so a hit returns exactly what the search would have computed and the result
+ * of a search no longer depends on the order its nodes were visited in.
+ *
+ * The table is shared between search threads without locking. A slot written by two threads at once
+ * can end up holding words from both writes, storing the key XORed with the other two words lets a
+ * reader detect this and treat the slot as a miss (Hyatt's lockless hashing).
+ *
+ * Slots are grouped in buckets of four. A board hashes to a bucket, and when the bucket is full the
+ * entry from the oldest generation is replaced, and among those the one with the fewest remaining plies
+ * (the one with the smallest subtree below it).
+ *
+ * The generation lets a table be kept for a whole game: advancing it before every decision (nextGeneration)
+ * makes the entries of earlier moves the first to go, while the ones the new search reads again are
+ * moved to the current generation and kept. Cached values do not depend on the generation, old entries
+ * stay valid until they are replaced. The table never grows, its memory is fixed when it is created.
+ */
+public class TranspositionTable {
+
+    private static final int SLOT_SIZE = 3;
+    private static final int BUCKET_SIZE = 4;
+    private static final int BYTES_PER_SLOT = SLOT_SIZE * 8;
+    private static final long GENERATION_MASK = 0xFFL << 40;
+
+    /**
+     * The fours allowance stored for searches that do not limit 4 spawns
+     */
+    public static final int UNLIMITED_FOURS = 0x7FFF;
+
+    private final long[] table;
+    private final int bucketMask;
+    private boolean exact = false;
+    private int generation = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder overwrites = new LongAdder();
+
+    /**
+     * @param megabytes memory budget of the table, rounded down to a power of two number of buckets
+     */
+    public TranspositionTable( int megabytes ) {
+        long slots = Math.max( BUCKET_SIZE, ( (long)megabytes << 20 ) / BYTES_PER_SLOT );
+        long buckets = Long.highestOneBit( Math.min( slots / BUCKET_SIZE, Integer.MAX_VALUE / ( SLOT_SIZE * BUCKET_SIZE ) ) );
+        this.table = new long[(int)buckets * BUCKET_SIZE * SLOT_SIZE];
+        this.bucketMask = (int)buckets - 1;
+    }
+
+    /**
+     * Looks up a board that needs to be searched remaining more plies with the given cutoff probability
+     *
+     * @return the cached value, or NaN if there is no entry that was searched at least as deep
+     */
+    public double get( long board, int remaining, float prob ) {
+        return get( board, remaining, UNLIMITED_FOURS, prob );
+    }
+
+    /**
+     * Looks up a board that needs to be searched remaining more plies with the given cutoff probability,
+     * allowing at most fours more 4 spawns below it
+     *
+     * @return the cached value, or NaN if there is no entry that was searched at least as deep
+     */
+    public double get( long board, int remaining, int fours, float prob ) {
+        fours = Math.min( fours, UNLIMITED_FOURS );
+        int base = bucket( board );
+        for( int i = base; i < base + SLOT_SIZE * BUCKET_SIZE; i += SLOT_SIZE ) {
+            long check = table[i];
+            long value = table[i + 1];
+            long meta = table[i + 2];
+            if( ( check ^ value ^ meta ) == board && meta != 0 ) {
+                boolean deepEnough = exact
+                        ? remaining( meta ) == remaining && prob( meta ) == prob && fours( meta ) == fours
+                        : remaining( meta ) >= remaining && prob( meta ) >= prob && fours( meta ) >= fours;
+                if( deepEnough ) {
+                    hits.increment();
+                    if( generation( meta ) != generation ) {
+                        long refreshed = ( meta & ~GENERATION_MASK ) | ( (long)generation << 40 );
+                        table[i + 2] = refreshed;
+                        table[i] = board ^ value ^ refreshed;
+                    }
+                    return Double.longBitsToDouble( value );
+                }
+                break;
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    public void put( long board, int remaining, float prob, double value ) {
+        put( board, remaining, UNLIMITED_FOURS, prob, value );
+    }
+
+    public void put( long board, int remaining, int fours, float prob, double value ) {
+        long meta = ( (long)Math.min( fours, UNLIMITED_FOURS ) << 48 ) | ( (long)generation << 40 )
+                | ( (long)Math.min( remaining + 1, 0xFF ) << 32 ) | ( Float.floatToRawIntBits( prob ) & 0xFFFFFFFFL );
+        long bits = Double.doubleToRawLongBits( value );
+        int base = bucket( board );
+        int replace = base;
+        int replacePriority = -1;
+        boolean evict = true;
+        for( int i = base; i < base + SLOT_SIZE * BUCKET_SIZE; i += SLOT_SIZE ) {
+            long entryMeta = table[i + 2];
+            if( entryMeta == 0 || ( table[i] ^ table[i + 1] ^ entryMeta ) == board ) {
+                replace = i;
+                evict = false;
+                break;
+            }
+            int age = ( generation - generation( entryMeta ) ) & 0xFF;
+            int priority = ( age << 8 ) | ( 0xFF - remaining( entryMeta ) );
+            if( priority > replacePriority ) {
+                replace = i;
+                replacePriority = priority;
+            }
+        }
+        if( evict ) {
+            overwrites.increment();
+        }
+        table[replace + 1] = bits;
+        table[replace + 2] = meta;
+        table[replace] = board ^ bits ^ meta;
+    }
+
+    public void clear() {
+        Arrays.fill( table, 0L );
+        generation = 0;
+    }
+
+    /**
+     * Starts a new generation, entries of the older ones are replaced first.
+     * Should not be called while a search is using the table.
+     */
+    public void nextGeneration() {
+        generation = ( generation + 1 ) & 0xFF;
+    }
+
+    public int getGeneration() { return generation; }
+
+    /**
+     * @return the memory used by the entries, which never changes
+     */
+    public long memoryBytes() {
+        return (long)table.length * 8;
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int capacity() {
+        return table.length / SLOT_SIZE;
+    }
+
+    public void setExactMatch( boolean exact ) { this.exact = exact; }
+    public boolean isExactMatch() { return exact; }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    /**
+     * @return the number of entries for one board that were evicted to store another
+     */
+    public long getOverwrites() { return overwrites.sum(); }
+
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        overwrites.reset();
+    }
+
+    private int bucket( long board ) {
+        long hash = board * 0x9E3779B97F4A7C15L;
+        return ( (int)( hash >>> 32 ) & bucketMask ) * SLOT_SIZE * BUCKET_SIZE;
+    }
+
+    private static int remaining( long meta ) {
+        return (int)( ( meta >>> 32 ) & 0xFF ) - 1;
+    }
+
+    private static int generation( long meta ) {
+        return (int)( meta >>> 40 ) & 0xFF;
+    }
+
+    private static int fours( long meta ) {
+        return (int)( meta >>> 48 );
+    }
+
+    private static float prob( long meta ) {
+        return Float.intBitsToFloat( (int)meta );
+    }
+}
@@ -2,12 +2,18 @@ package Tests; /**
  * Created by Rob on 11/4/2016.
  */
 import Environment.BitBoard;
+import Environment.RandomTileSpawner;
+import Harness.*;
 import Search.*;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 public class BitboardTests {
 
@@ -67,6 +73,7 @@ public class BitboardTests {
     public static void testGame(){
         ExpectiMax s = new ExpectiMax();
         s.setDepth(6);
+        s.setSessionMode(true);
         Random rng = new Random();
         long x = 0L;
         x = BitBoard.addTile(x);
@@ -87,6 +94,7 @@ public class BitboardTests {
         int numGames = 10;                ;
         for(int i = 0; i < numGames; i++) {
             boolean print = false;
+            s.newGame();
             while (!BitBoard.isTerminal(x)) {
                 x = s.decideAction(x);
                 x = BitBoard.addTile(x);
@@ -146,8 +154,6 @@ public class BitboardTests {
             x = 0L;
             x = BitBoard.addTile(x);
             x = BitBoard.addTile(x);
-            s = new ExpectiMax();
-            s.setDepth(6);
         }
         String header =  "Iterations: " + numGames + "\nScore | num times | percentage";
         String msg = "";
@@ -172,6 +178,47 @@ public class BitboardTests {
         System.out.println(msg);
     }
 
+    /**
+     * Checks that the parallel search picks the same moves as the serial one in reproducible mode, at depth 5 on
+     * fixed positions
+     */
+    public static void testParallelSearch(){
+        ExpectiMax serial = new ExpectiMax();
+        ExpectiMax parallel = new ExpectiMax();
+        for(ExpectiMax search : new ExpectiMax[]{serial, parallel}){
+            search.setDepth(5);
+            search.setReproducible(true);
+        }
+        parallel.setParallelism(Runtime.getRuntime().availableProcessors() + 1);
+        int mismatches = 0;
+        for(long x : positions(100, 5L)){
+            if(serial.decideAction(x) != parallel.decideAction(x)){
+                mismatches++;
+            }
+        }
+        parallel.setParallelism(1);
+        System.out.println("Mismatched moves: " + mismatches);
+        TranspositionTable cache = serial.getCache();
+        System.out.println("Cache hits: " + cache.getHits() + " misses: " + cache.getMisses() + " overwrites: " + cache.getOverwrites());
+    }
+
+    public static void testCompactEvaluation(){
+        Random rng = new Random();
+        double worst = 0;
+        for(int i = 0; i < 1000000; i++){
+            long x = rng.nextLong();
+            double exact = Evaluator.evaluateBoard(x);
+            double bound = 0;
+            for(long row : new long[]{x, Evaluator.transpose(x)}){
+                for(int shift = 0; shift < 64; shift += 16){
+                    bound += Math.abs(TableEvaluator.DEFAULT.score((int)((row >>> shift) & 0xFFFF)));
+                }
+            }
+            worst = Math.max(worst, Math.abs(Evaluator.evaluateCompact(x) - exact) / Math.max(bound, Double.MIN_NORMAL));
+        }
+        System.out.println("Largest relative compact evaluation error: " + worst + " (tolerance " + TableEvaluator.COMPACT_TOLERANCE + ")");
+    }
+
     public static void testSearch(){
         long x = BitBoard.powersToBitboard(board);
         //BitBoard.printBoard(x);
@@ -187,4 +234,293 @@ public class BitboardTests {
         System.out.println("Game over");
 
     }
+
+    /**
+     * Compares the table moves with a tile by tile merge and with the old rotation based vertical moves,
+     * on random boards with some empty squares
+     */
+    public static void testMoves(){
+        Random rng = new Random(1);
+        int mismatches = 0;
+        for(int i = 0; i < 1000000; i++){
+            long x = 0L;
+            for(int shift = 0; shift < 64; shift += 4){
+                x |= (rng.nextInt(3) == 0 ? 0L : 1 + rng.nextInt(15)) << shift;
+            }
+            long up = BitBoard.rotateCounterClockwise(BitBoard.moveRight(BitBoard.rotateClockwise(x)));
+            long down = BitBoard.rotateClockwise(BitBoard.moveRight(BitBoard.rotateCounterClockwise(x)));
+            if(BitBoard.moveLeft(x) != referenceMove(x, false, false)
+                    || BitBoard.moveRight(x) != referenceMove(x, false, true)
+                    || BitBoard.moveUp(x) != referenceMove(x, true, false) || BitBoard.moveUp(x) != up
+                    || BitBoard.moveDown(x) != referenceMove(x, true, true) || BitBoard.moveDown(x) != down){
+                mismatches++;
+            }
+        }
+        System.out.println("Mismatched moves: " + mismatches);
+    }
+
+    /**
+     * Moves every line of the board one tile at a time: each tile merges at most once, two 32768 tiles do not merge
+     *
+     * @param vertical move the columns (up or down) instead of the rows (left or right)
+     * @param reverse move towards the last row or column (right or down)
+     */
+    private static long referenceMove(long board, boolean vertical, boolean reverse){
+        long result = 0L;
+        for(int line = 0; line < 4; line++){
+            int[] tiles = new int[4];
+            int count = 0;
+            boolean merged = false;
+            for(int k = 0; k < 4; k++){
+                int i = reverse ? 3 - k : k;
+                int tile = (int)((board >>> (vertical ? BitBoard.shifts[i][line] : BitBoard.shifts[line][i])) & 0xF);
+                if(tile == 0){
+                    continue;
+                }
+                if(count > 0 && !merged && tiles[count - 1] == tile && tile != 0xF){
+                    tiles[count - 1]++;
+                    merged = true;
+                }else{
+                    tiles[count++] = tile;
+                    merged = false;
+                }
+            }
+            for(int k = 0; k < count; k++){
+                int i = reverse ? 3 - k : k;
+                result |= (long)tiles[k] << (vertical ? BitBoard.shifts[i][line] : BitBoard.shifts[line][i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Positions from games of random moves with seeded tile spawns, the same ones on every run
+     */
+    public static long[] positions(int count, long seed){
+        RandomTileSpawner spawner = new RandomTileSpawner(seed);
+        Random rng = new Random(seed);
+        long[] positions = new long[count];
+        long[] moves = new long[4];
+        long x = spawner.spawn(spawner.spawn(0L));
+        for(int i = 0; i < count; i++){
+            if(BitBoard.isTerminal(x)){
+                x = spawner.spawn(spawner.spawn(0L));
+            }
+            positions[i] = x;
+            x = spawner.spawn(moves[rng.nextInt(MoveGenerator.generateMoves(x, moves))]);
+        }
+        return positions;
+    }
+
+    /**
+     * Checks that ABPruning in reproducible mode, with its move ordering, bound tables and iterative deepening,
+     * picks a move worth as much as the best move of a plain minimax to the same depth
+     */
+    public static void testABPruning(){
+        long[] positions = positions(50, 1L);
+        long[] moves = new long[4];
+        int mismatches = 0;
+        for(int depth = 1; depth <= 5; depth++){
+            ABPruning search = new ABPruning();
+            search.setDepth(depth);
+            search.setReproducible(true);
+            for(long x : positions){
+                double best = Double.NEGATIVE_INFINITY;
+                int count = MoveGenerator.generateMoves(x, moves);
+                for(int i = 0; i < count; i++){
+                    best = Math.max(best, minimaxMin(moves[i], 0, depth));
+                }
+                if(minimaxMin(search.decideAction(x), 0, depth) != best){
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("Moves worse than minimax: " + mismatches);
+    }
+
+    private static double minimaxMax(long board, int depth, int maxDepth){
+        if(BitBoard.isTerminal(board)){
+            return 0.0;
+        }
+        if(depth >= maxDepth){
+            return TableEvaluator.DEFAULT.evaluate(board);
+        }
+        long[] moves = new long[4];
+        int count = MoveGenerator.generateMoves(board, moves);
+        double value = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++){
+            value = Math.max(value, minimaxMin(moves[i], depth + 1, maxDepth));
+        }
+        return value;
+    }
+
+    private static double minimaxMin(long board, int depth, int maxDepth){
+        if(BitBoard.isTerminal(board)){
+            return 0.0;
+        }
+        if(depth >= maxDepth){
+            return TableEvaluator.DEFAULT.evaluate(board);
+        }
+        double value = Double.POSITIVE_INFINITY;
+        for(int shift = 0; shift < 64; shift += 4){
+            if(((board >>> shift) & 0xF) == 0){
+                value = Math.min(value, minimaxMax(board | (1L << shift), depth + 1, maxDepth));
+                value = Math.min(value, minimaxMax(board | (2L << shift), depth + 1, maxDepth));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Checks that decideActions picks the same move for every board as decideAction does, searched serially,
+     * on the pool as a batch (one board per thread), and on the pool one board at a time (each board split)
+     */
+    public static void testBatchDecisions(){
+        long[] positions = positions(50, 2L);
+        ExpectiMax single = new ExpectiMax();
+        ExpectiMax serial = new ExpectiMax();
+        ExpectiMax parallel = new ExpectiMax();
+        for(ExpectiMax search : new ExpectiMax[]{single, serial, parallel}){
+            search.setDepth(4);
+            search.setReproducible(true);
+        }
+        parallel.setParallelism(Runtime.getRuntime().availableProcessors() + 1);
+        long[] serialMoves = serial.decideActions(positions);
+        long[] parallelMoves = parallel.decideActions(positions);
+        int mismatches = 0;
+        for(int i = 0; i < positions.length; i++){
+            long move = single.decideAction(positions[i]);
+            if(serialMoves[i] != move || parallelMoves[i] != move || parallel.decideActions(new long[]{positions[i]})[0] != move){
+                mismatches++;
+            }
+        }
+        parallel.setParallelism(1);
+        System.out.println("Mismatched batch moves: " + mismatches);
+    }
+
+    /**
+     * Checks that all 8 symmetries of a board canonicalize to the same board, which is one of them, and that
+     * a search with canonical cache keys picks the same moves as one keyed on the boards themselves
+     */
+    public static void testCanonicalKeys(){
+        Random rng = new Random(3);
+        int wrongKeys = 0;
+        for(int i = 0; i < 100000; i++){
+            long x = rng.nextLong();
+            long canonical = BitBoard.canonicalize(x);
+            boolean found = false;
+            for(int symmetry = 0; symmetry < 8; symmetry++){
+                long y = BitBoard.symmetry(x, symmetry);
+                found |= y == canonical;
+                if(BitBoard.canonicalize(y) != canonical){
+                    wrongKeys++;
+                }
+            }
+            if(!found){
+                wrongKeys++;
+            }
+        }
+        System.out.println("Wrong canonical keys: " + wrongKeys);
+
+        ExpectiMax plain = new ExpectiMax();
+        ExpectiMax canonical = new ExpectiMax();
+        for(ExpectiMax search : new ExpectiMax[]{plain, canonical}){
+            search.setDepth(4);
+            search.setReproducible(true);
+        }
+        canonical.setCanonicalKeys(true);
+        int mismatches = 0;
+        for(long x : positions(50, 3L)){
+            if(plain.decideAction(x) != canonical.decideAction(x)){
+                mismatches++;
+            }
+        }
+        System.out.println("Mismatched moves with " + canonical.getCacheSymmetries() + " symmetries per key: " + mismatches);
+    }
+
+    /**
+     * Checks RandomTileSpawner.selectTile against a tile by tile scan for every empty tile of random boards,
+     * and that a seeded spawner places the same tiles as the same draws placed with the scan, since recorded
+     * games replay from their seeds
+     */
+    public static void testTileSpawner(){
+        Random rng = new Random(4);
+        int mismatches = 0;
+        for(int i = 0; i < 1000000; i++){
+            long x = rng.nextLong() & rng.nextLong();
+            long empty = BitBoard.emptyMask(x);
+            for(int n = 0; n < Long.bitCount(empty); n++){
+                if(RandomTileSpawner.selectTile(empty, n) != scanTile(x, n)){
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("Mismatched tiles: " + mismatches);
+
+        int mismatchedSpawns = 0;
+        for(long seed = 0; seed < 100; seed++){
+            RandomTileSpawner spawner = new RandomTileSpawner(seed);
+            SplittableRandom draws = new SplittableRandom(seed);
+            long[] moves = new long[4];
+            long x = 0L;
+            for(int move = 0; move < 200 && !BitBoard.isTerminal(x); move++){
+                long tile = draws.nextInt(10) == 0 ? 2L : 1L;
+                long expected = x | (tile << scanTile(x, draws.nextInt(BitBoard.emptySpaces(x))));
+                long spawned = spawner.spawn(x);
+                if(spawned != expected){
+                    mismatchedSpawns++;
+                }
+                int count = MoveGenerator.generateMoves(expected, moves);
+                x = count == 0 ? expected : moves[move % count];
+            }
+        }
+        System.out.println("Mismatched spawns: " + mismatchedSpawns);
+    }
+
+    /**
+     * @return the shift of the n'th empty tile, counting from the lowest bits
+     */
+    private static int scanTile(long board, int n){
+        for(int shift = 0; shift < 64; shift += 4){
+            if(((board >>> shift) & 0xF) == 0 && n-- == 0){
+                return shift;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a few self-play games to a trace file, reads them back and replays them: every trace must hold the
+     * moves and final board of its game, every move and spawned tile must turn each board into the next, and
+     * replaying with the same settings must agree with every recorded move
+     */
+    public static void testTraceRoundTrip() throws Exception {
+        Path file = Files.createTempFile("games", ".trace");
+        try{
+            SelfPlay settings = new SelfPlay().games(4).threads(2).depth(2).verbose(false);
+            List<GameResult> results;
+            try(GameRecorder recorder = new GameRecorder(file)){
+                results = settings.recorder(recorder).run();
+            }
+            List<GameTrace> traces = GameRecorder.read(file);
+            int wrongTraces = results.size() - traces.size();
+            int different = 0;
+            for(GameTrace trace : traces){
+                GameResult result = results.get(trace.game);
+                if(trace.seed != result.seed || trace.moves() != result.moves || trace.finalBoard() != result.finalBoard){
+                    wrongTraces++;
+                }
+                for(int i = 0; i < trace.moves(); i++){
+                    long tile = (trace.spawnedFour(i) ? 2L : 1L) << (60 - 4 * trace.spawnCell(i));
+                    if((trace.afterstate(i) | tile) != trace.board(i + 1)){
+                        wrongTraces++;
+                    }
+                }
+                different += Replay.replayGame(settings, trace, false);
+            }
+            System.out.println("Wrong traces: " + wrongTraces + ", moves replayed differently: " + different);
+        }finally{
+            Files.delete(file);
+        }
+    }
 }